@@ -0,0 +1,119 @@
+package orbits.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import orbits.physics.EffectivePotential;
+import orbits.physics.OrbitEngine;
+import orbits.physics.ParticleCloud;
+import orbits.physics.TabulatedPotential;
+
+// The effective potential and one engine step without any drawing
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PhysicsBenchmark {
+
+	private static final int RADII = 1024;
+
+	// Radii across the plot range, outside the horizon
+	@State(Scope.Thread)
+	public static class Radii {
+		// Exact or interpolated from the table
+		@Param({ "false", "true" })
+		boolean tabulated;
+
+		EffectivePotential potential;
+		final double[] radii = new double[RADII];
+
+		@Setup
+		public void setup() {
+			potential = tabulated ? TabulatedPotential.of(OrbitEngine.L_DEF, OrbitEngine.M_DEF)
+					: new EffectivePotential(OrbitEngine.L_DEF, OrbitEngine.M_DEF);
+			double rMin = 2 * potential.getM();
+			for (int i = 0; i < RADII; i++)
+				radii[i] = rMin + (potential.getRMax() - rMin) * (i + 1) / RADII;
+		}
+	}
+
+	// One evaluation per plot column
+	@Benchmark
+	@OperationsPerInvocation(RADII)
+	public void eG(Radii state, Blackhole bh) {
+		for (double r : state.radii)
+			bh.consume(state.potential.eG(r));
+	}
+
+	@State(Scope.Thread)
+	public static class Engine {
+		@Param({ "EULER", "ADAPTIVE", "ANALYTIC" })
+		OrbitEngine.Method method;
+
+		// Pixels across the energy plot, i.e., creep steps at turning points (Euler)
+		@Param({ "800" })
+		int resolution;
+
+		@Param({ "false", "true" })
+		boolean tabulated;
+
+		OrbitEngine engine;
+
+		@Setup
+		public void setup() {
+			engine = new OrbitEngine();
+			engine.setTabulatedPotential(tabulated);
+			engine.setMethod(method);
+			engine.setResolution(resolution);
+			engine.putParticle(1.02 * engine.minStartRadius(false));
+		}
+	}
+
+	// One frame, including the turnarounds at the extreme points
+	@Benchmark
+	public OrbitEngine.Event step(Engine state) {
+		OrbitEngine engine = state.engine;
+		OrbitEngine.Event event = engine.step();
+		if (engine.isCaptured())
+			engine.putParticle(1.02 * engine.minStartRadius(false));
+		return event;
+	}
+
+	@State(Scope.Thread)
+	public static class Cloud {
+		@Param({ "10000", "100000", "1000000" })
+		int particles;
+
+		ParticleCloud cloud;
+
+		// Released afresh per iteration, so the captured ones do not thin it out
+		@Setup(Level.Iteration)
+		public void setup() {
+			double L = OrbitEngine.L_DEF, M = OrbitEngine.M_DEF;
+			cloud = new ParticleCloud(M, 200 * M);
+			cloud.release(particles, 6 * M, 50 * M, 0.8 * L, 1.2 * L, 42);
+		}
+	}
+
+	// One frame of the many-particle mode at time warp 1, in parallel chunks
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void cloudStep(Cloud state) {
+		state.cloud.advance(1);
+	}
+}
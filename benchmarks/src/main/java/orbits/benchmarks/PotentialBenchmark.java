@@ -0,0 +1,98 @@
+package orbits.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orbits.physics.OrbitEngine;
+import orbits.physics.PotentialKernels;
+
+// Bulk evaluation of the potential, in plain loops or in vector lanes: one
+// value per column of a wide plot, and one per particle with its own angular
+// momentum
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector" })
+public class PotentialBenchmark {
+
+	@State(Scope.Thread)
+	public static class Columns {
+		@Param({ "800", "4096" })
+		int width;
+
+		@Param({ "false", "true" })
+		boolean vectorized;
+
+		double[] r, values;
+
+		@Setup
+		public void setup() {
+			PotentialKernels.setVectorized(vectorized);
+			if (vectorized && !PotentialKernels.isVectorized())
+				throw new IllegalStateException("Vector API not available");
+			double M = OrbitEngine.M_DEF, rMax = 30 * M;
+			r = new double[width];
+			values = new double[width];
+			for (int i = 0; i < width; i++)
+				r[i] = rMax * (width - i) / width + 2 * M;
+		}
+	}
+
+	@Benchmark
+	public double[] eGColumns(Columns state) {
+		PotentialKernels.eG(OrbitEngine.L_DEF, OrbitEngine.M_DEF, state.r, state.values, state.width);
+		return state.values;
+	}
+
+	@Benchmark
+	public double[] ySColumns(Columns state) {
+		PotentialKernels.yS(OrbitEngine.M_DEF, 500, state.r, state.values, state.width);
+		return state.values;
+	}
+
+	@State(Scope.Thread)
+	public static class Particles {
+		@Param({ "1000000" })
+		int particles;
+
+		@Param({ "false", "true" })
+		boolean vectorized;
+
+		double[] r, L, e;
+
+		@Setup
+		public void setup() {
+			PotentialKernels.setVectorized(vectorized);
+			if (vectorized && !PotentialKernels.isVectorized())
+				throw new IllegalStateException("Vector API not available");
+			double M = OrbitEngine.M_DEF;
+			r = new double[particles];
+			L = new double[particles];
+			e = new double[particles];
+			SplittableRandom random = new SplittableRandom(42);
+			for (int i = 0; i < particles; i++) {
+				r[i] = (6 + 44 * random.nextDouble()) * M;
+				L[i] = (0.8 + 0.4 * random.nextDouble()) * OrbitEngine.L_DEF;
+			}
+		}
+	}
+
+	@Benchmark
+	public double[] eGParticles(Particles state) {
+		PotentialKernels.eG(OrbitEngine.M_DEF, state.r, state.L, state.e, state.particles);
+		return state.e;
+	}
+}
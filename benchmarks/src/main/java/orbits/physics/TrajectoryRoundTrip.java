@@ -0,0 +1,137 @@
+package orbits.physics;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Round trip of a recording: TrajectoryReader must read back what
+// TrajectoryWriter wrote, sample by sample, with the index of the footer and
+// with the index rebuilt by a scan (the footer cut off, as after a crash, and
+// additionally the last record cut short). Exits with 1 on any difference:
+//   java -cp target/benchmarks.jar orbits.physics.TrajectoryRoundTrip
+public class TrajectoryRoundTrip {
+
+	// One recording within the first buffer of the writer, one far beyond it
+	private static final int[] SAMPLES = { 20002, 400000 };
+	private static final int PLACEMENT_INTERVAL = 5000;
+
+	// The trajectory as recorded
+	private static double[] tau, r, phi, L, M, eventR;
+	private static boolean[] placement;
+	private static OrbitEngine.Event[] events;
+
+	public static void main(String[] args) throws IOException {
+		boolean failed = false;
+		for (int n : SAMPLES)
+			failed |= check(n);
+		System.out.println(failed ? "FAILED: the recordings differ" : "OK: all recordings read back");
+		System.exit(failed ? 1 : 0);
+	}
+
+	private static boolean check(int n) throws IOException {
+		Path file = Files.createTempFile("orbits", ".trj");
+		Path cut = Files.createTempFile("orbits", ".trj");
+		try {
+			record(file, n);
+			boolean failed = !compare("indexed", file, n);
+
+			// The records only, up to the index given by the footer
+			long indexOffset;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				indexOffset = channel.map(FileChannel.MapMode.READ_ONLY, channel.size() - 16, 16)
+						.order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+			}
+			copy(file, cut, indexOffset);
+			failed |= !compare("scanned", cut, n);
+			copy(file, cut, indexOffset - 3);
+			failed |= !compare("truncated", cut, n - 1);
+			return failed;
+		} finally {
+			Files.delete(file);
+			Files.delete(cut);
+		}
+	}
+
+	// Steps of the engine with a new placement (and new parameters) now and then
+	private static void record(Path file, int n) throws IOException {
+		tau = new double[n];
+		r = new double[n];
+		phi = new double[n];
+		L = new double[n];
+		M = new double[n];
+		eventR = new double[n];
+		placement = new boolean[n];
+		events = new OrbitEngine.Event[n];
+		Random random = new Random(1);
+		OrbitEngine engine = new OrbitEngine();
+		try (TrajectoryWriter writer = new TrajectoryWriter(file)) {
+			for (int i = 0; i < n; i++) {
+				OrbitEngine.Event event = OrbitEngine.Event.NONE;
+				placement[i] = i % PLACEMENT_INTERVAL == 0;
+				if (placement[i]) {
+					engine.setParameters(OrbitEngine.L_DEF * (0.9 + 0.2 * random.nextDouble()),
+							OrbitEngine.M_DEF * (0.9 + 0.2 * random.nextDouble()));
+					engine.putParticle((1.1 + random.nextDouble()) * engine.minStartRadius(true));
+				} else {
+					event = engine.step();
+				}
+				writer.record(engine, event, placement[i]);
+				tau[i] = engine.getState().getTau();
+				r[i] = engine.getR();
+				phi[i] = engine.getUnwrappedPhi();
+				L[i] = engine.getL();
+				M[i] = engine.getM();
+				events[i] = event;
+				eventR[i] = engine.getEventR();
+			}
+		}
+	}
+
+	private static boolean compare(String name, Path file, int n) throws IOException {
+		try (TrajectoryReader reader = new TrajectoryReader(file)) {
+			if (reader.getSamples() != n) {
+				System.out.printf("%s: %d samples instead of %d%n", name, reader.getSamples(), n);
+				return false;
+			}
+			int placements = 0;
+			for (int i = 0; i < n; i++) {
+				if (!reader.next()) {
+					System.out.printf("%s: sample %d missing%n", name, i);
+					return false;
+				}
+				if (Math.abs(reader.getTau() - tau[i]) > TrajectoryWriter.TAU_QUANTUM
+						|| Math.abs(reader.getR() - r[i]) > TrajectoryWriter.QUANTUM
+						|| Math.abs(reader.getPhi() - phi[i]) > TrajectoryWriter.QUANTUM
+						|| reader.getL() != L[i] || reader.getM() != M[i] || reader.isPlacement() != placement[i]
+						|| reader.getEvent() != events[i]
+						|| events[i] != OrbitEngine.Event.NONE && reader.getEventR() != eventR[i]) {
+					System.out.printf("%s: sample %d differs (r %g instead of %g, L %g instead of %g)%n", name, i,
+							reader.getR(), r[i], reader.getL(), L[i]);
+					return false;
+				}
+				if (reader.isPlacement())
+					placements++;
+			}
+			if (reader.next()) {
+				System.out.printf("%s: more than %d samples%n", name, n);
+				return false;
+			}
+			System.out.printf("%-9s %7d samples, %3d placements, %8d bytes: OK%n", name, n, placements,
+					Files.size(file));
+			return true;
+		}
+	}
+
+	private static void copy(Path from, Path to, long bytes) throws IOException {
+		try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(to, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long done = 0; done < bytes;)
+				done += in.transferTo(done, bytes - done, out);
+		}
+	}
+}
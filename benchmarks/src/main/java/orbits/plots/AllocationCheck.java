@@ -0,0 +1,76 @@
+package orbits.plots;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import orbits.physics.OrbitEngine;
+
+// Allocation check of the steady-state frame loop: after a warm-up, the
+// update and the dynamic part of all plots must not allocate at all, for each
+// method of the engine. The bytes are counted per thread by the JVM. Exits
+// with 1 if anything was allocated:
+//   java -Djava.awt.headless=true -cp target/benchmarks.jar orbits.plots.AllocationCheck
+// This class is in the plot package for access to the protected drawing
+// methods, like PlotBenchmark.
+public class AllocationCheck {
+
+	// Enough for the JIT to compile (and scalar replace) the frame loop
+	private static final int WARMUP_FRAMES = 10000;
+	private static final int FRAMES = 2000;
+
+	public static void main(String[] args) {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.err.println("Allocated bytes per thread are not supported by this JVM");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		boolean allocated = false;
+		for (OrbitEngine.Method method : OrbitEngine.Method.values())
+			allocated |= check(threads, method);
+		System.out.println(allocated ? "FAILED: the frame loop allocates" : "OK: no allocation in the frame loop");
+		System.exit(allocated ? 1 : 0);
+	}
+
+	private static boolean check(ThreadMXBean threads, OrbitEngine.Method method) {
+		Simulation simulation = new Simulation();
+		BasePlot[] plots = { new EnergyPlot(simulation), new SchwarzschildPlot(simulation),
+				new OrbitPlot(simulation) };
+		simulation.getEngine().setMethod(method);
+		Graphics2D[] g = new Graphics2D[plots.length];
+		for (int i = 0; i < plots.length; i++)
+			g[i] = PlotBenchmark.createImage(plots[i], 800, 600).createGraphics();
+		AffineTransform identity = new AffineTransform();
+
+		long[] update = new long[plots.length];
+		long[] paint = new long[plots.length];
+		for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+			boolean measure = frame >= WARMUP_FRAMES;
+			for (int i = 0; i < plots.length; i++) {
+				long before = threads.getCurrentThreadAllocatedBytes();
+				plots[i].updateDynamicPart();
+				if (measure)
+					update[i] += threads.getCurrentThreadAllocatedBytes() - before;
+			}
+			for (int i = 0; i < plots.length; i++) {
+				g[i].setTransform(identity);
+				long before = threads.getCurrentThreadAllocatedBytes();
+				plots[i].paintDynamicPart(g[i]);
+				if (measure)
+					paint[i] += threads.getCurrentThreadAllocatedBytes() - before;
+			}
+		}
+
+		boolean allocated = false;
+		for (int i = 0; i < plots.length; i++) {
+			System.out.printf("%-9s %-20s update %8.1f B/frame, paint %8.1f B/frame%n", method,
+					plots[i].getPlotTitle(), (double) update[i] / FRAMES, (double) paint[i] / FRAMES);
+			allocated |= update[i] > 0 || paint[i] > 0;
+			g[i].dispose();
+		}
+		return allocated;
+	}
+}
@@ -0,0 +1,142 @@
+package orbits.plots;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orbits.physics.OrbitEngine;
+
+// The plots render into an offscreen image under headless AWT. This class is in
+// the plot package for access to the protected drawing methods.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlotBenchmark {
+
+	static BufferedImage createImage(BasePlot plot, int width, int height) {
+		plot.setSize(width, height);
+		plot.validate();
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+
+	// EnergyPlot.updateDynamicPart(): one engine step and the mark broadcasts
+	@State(Scope.Thread)
+	public static class Update {
+		@Param({ "EULER", "ADAPTIVE" })
+		OrbitEngine.Method method;
+
+		EnergyPlot energyPlot;
+		OrbitEngine engine;
+
+		@Setup
+		public void setup() {
+			Simulation simulation = new Simulation();
+			engine = simulation.getEngine();
+			energyPlot = new EnergyPlot(simulation);
+			createImage(energyPlot, 800, 400);
+			engine.setMethod(method);
+		}
+	}
+
+	@Benchmark
+	public double updateEnergyPlot(Update state) {
+		state.energyPlot.updateDynamicPart();
+		if (state.engine.isCaptured())
+			state.energyPlot.validate();
+		return state.engine.getR();
+	}
+
+	// drawPotential() of the energy and the Schwarzschild plot
+	@State(Scope.Thread)
+	public static class Potential {
+		@Param({ "ENERGY", "SCHWARZSCHILD" })
+		String plotType;
+
+		@Param({ "800x400", "3840x2160" })
+		String size;
+
+		BasePlot plot;
+		BufferedImage image;
+
+		@Setup
+		public void setup() {
+			Simulation simulation = new Simulation();
+			// The energy plot is needed in any case for the plot range
+			EnergyPlot energyPlot = new EnergyPlot(simulation);
+			plot = plotType.equals("ENERGY") ? energyPlot : new SchwarzschildPlot(simulation);
+			String[] wh = size.split("x");
+			image = createImage(plot, Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+			if (plot != energyPlot)
+				createImage(energyPlot, plot.getWidth(), plot.getHeight());
+		}
+	}
+
+	@Benchmark
+	public BufferedImage drawPotential(Potential state) {
+		Graphics2D g = state.image.createGraphics();
+		g.transform(state.plot.t0);
+		state.plot.drawPotential(g);
+		g.dispose();
+		return state.image;
+	}
+
+	// OrbitPlot.paintDynamicPart() with a trail of the given length. The
+	// incremental layer draws the trail once and then only blits it, so stroking
+	// the whole trail every frame is measured as well.
+	@State(Scope.Thread)
+	public static class Trail {
+		@Param({ "1000", "100000", "1000000" })
+		int vertices;
+
+		@Param({ "false", "true" })
+		boolean incremental;
+
+		OrbitPlot orbitPlot;
+		BufferedImage image;
+
+		@Setup
+		public void setup() {
+			Simulation simulation = new Simulation();
+			EnergyPlot energyPlot = new EnergyPlot(simulation);
+			orbitPlot = new OrbitPlot(simulation);
+			createImage(energyPlot, 800, 400);
+			image = createImage(orbitPlot, 1000, 1000);
+			orbitPlot.drawPotential(image.createGraphics());
+			// Room for all vertices, beyond the default trail length
+			orbitPlot.setTrailLength(vertices);
+			orbitPlot.setIncrementalTrail(incremental);
+			for (int i = 0; i < vertices; i++) {
+				energyPlot.updateDynamicPart();
+				orbitPlot.updateDynamicPart();
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			orbitPlot.clear();
+		}
+	}
+
+	@Benchmark
+	public BufferedImage paintOrbit(Trail state) {
+		Graphics2D g = state.image.createGraphics();
+		state.orbitPlot.paintDynamicPart(g);
+		g.dispose();
+		return state.image;
+	}
+}
@@ -7,10 +7,8 @@ import java.util.Arrays;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.awt.SWT_AWT;
-import org.eclipse.swt.events.ControlListener;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.*;
@@ -28,7 +26,6 @@ public class OrbitsAppSWT {
 	private OrbitsAnimation orbitsAnimation;
 	private GridData gdAnimation, gdController;
 	private MenuItem miPauseCont, miRestart, miSave, miExit, miAbout;
-	private Rectangle lastArea;
 
 	public OrbitsAppSWT() {
 		Display display = new Display();
@@ -67,9 +64,6 @@ public class OrbitsAppSWT {
 		Arrays.asList(miPauseCont, miRestart, miSave, miExit, miAbout)
 				.forEach(mi -> mi.addSelectionListener(selectionListener));
 
-		// Resize listener to avoid repetitive repainting
-		shell.addControlListener(resizeListener);
-
 		// Layout
 		shell.setLayout(new GridLayout());
 		gdAnimation = new GridData(SWT.FILL, SWT.FILL, true, true);
@@ -149,28 +143,6 @@ public class OrbitsAppSWT {
 		}
 	});
 
-	// Again, we have a suitable adapter
-	ControlListener resizeListener = ControlListener.controlResizedAdapter(e -> {
-		Rectangle clientArea = shell.getClientArea();
-		// Initialize
-		if (lastArea == null || lastArea.isEmpty())
-			lastArea = clientArea;
-		// No resize, so no need to do anything
-		if (lastArea.equals(clientArea))
-			return;
-		boolean wasRunning = orbitsAnimation.isRunning();
-		// Suspend graphical activity
-		orbitsAnimation.setRunning(false);
-		animationComposite.setRedraw(false);
-		e.display.timerExec(100, () -> {
-			// Restart graphics again after 100 ms of no motion
-			animationComposite.setRedraw(true);
-			if (wasRunning)
-				orbitsAnimation.setRunning(true);
-			lastArea = clientArea;
-		});
-	});
-
 	public static void main(String[] args) {
 		new OrbitsAppSWT();
 		System.exit(0);
@@ -0,0 +1,33 @@
+package orbits.applications;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import orbits.physics.OrbitConfiguration;
+import orbits.physics.TrajectoryBatch;
+
+// Command line: run the orbits of a parameter file on all cores without any
+// GUI and write their trajectories into a binary file.
+//   OrbitsBatch <parameter file> <output file> [threads]
+// See OrbitConfiguration for the parameter file and TrajectoryBatch for the
+// output format.
+public class OrbitsBatch {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: OrbitsBatch <parameter file> <output file> [threads]");
+			System.exit(1);
+		}
+		List<OrbitConfiguration> configurations = OrbitConfiguration.read(Paths.get(args[0]));
+		Path output = Paths.get(args[1]);
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		TrajectoryBatch batch = new TrajectoryBatch(configurations);
+		long t = System.nanoTime();
+		long size = batch.run(output, threads);
+		System.out.printf("%d orbits, %d samples, %d bytes in %.1f s%n", batch.size(), batch.getSamples(), size,
+				(System.nanoTime() - t) / 1e9);
+	}
+}
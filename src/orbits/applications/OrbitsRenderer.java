@@ -0,0 +1,36 @@
+package orbits.applications;
+
+import java.io.File;
+import java.io.IOException;
+
+import orbits.plots.FrameRenderer;
+
+// Command line: render an animation without a display into a PNG sequence.
+//   OrbitsRenderer <directory> [frames] [width] [height] [L] [M] [steps per frame] [separate]
+// Example for ffmpeg: ffmpeg -framerate 60 -i frame-%06d.png orbits.mp4
+public class OrbitsRenderer {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 0) {
+			System.err.println("Usage: OrbitsRenderer <directory> [frames] [width] [height] [L] [M] "
+					+ "[steps per frame] [separate]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+
+		FrameRenderer renderer = new FrameRenderer();
+		if (args.length > 1)
+			renderer.setFrames(Integer.parseInt(args[1]));
+		if (args.length > 3)
+			renderer.setSize(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		if (args.length > 5)
+			renderer.getSimulation().setParameters(Double.parseDouble(args[4]), Double.parseDouble(args[5]));
+		if (args.length > 6)
+			renderer.setStepsPerFrame(Integer.parseInt(args[6]));
+		renderer.setComposite(args.length <= 7 || !args[7].equals("separate"));
+
+		long t = System.nanoTime();
+		int files = renderer.render(new File(args[0]));
+		System.out.printf("%d files in %.1f s%n", files, (System.nanoTime() - t) / 1e9);
+	}
+}
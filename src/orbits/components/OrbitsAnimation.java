@@ -15,39 +15,119 @@ import javax.imageio.ImageIO;
 
 import ch.oliverfritz.util.MoreUtil;
 import ch.oliverfritz.util.RunnableContainer;
+import orbits.physics.OrbitEngine;
+import orbits.physics.TrajectoryPublisher;
 import orbits.plots.BasePlot;
 import orbits.plots.EnergyPlot;
 import orbits.plots.OrbitPlot;
 import orbits.plots.SchwarzschildPlot;
+import orbits.plots.Simulation;
 
 public class OrbitsAnimation extends RunnableContainer {
 
 	// Suggested initial frame rate
 	private static final int initialFrameRate = 75;
 
+	// Simulation steps per second, i.e., the physical speed of the animation. It
+	// used to be tied to the frame rate and keeps its old default.
+	private static final double initialStepRate = initialFrameRate;
+
+	// Each animation has its own simulation with its own plots
+	private final Simulation simulation = new Simulation();
 	BasePlot energyPlot, schwarzschildPlot, orbitPlot;
 
 	// Get and set methods
+	public Simulation getSimulation() {
+		return simulation;
+	}
+
+	// Render the plots in parallel off the event thread (default) or in their
+	// update() calls on the event thread
+	public void setOffscreenRendering(boolean offscreen) {
+		simulation.setOffscreenRendering(offscreen);
+	}
+
+	public boolean isOffscreenRendering() {
+		return simulation.isOffscreenRendering();
+	}
+
+	// Physical speed in steps per second, independent of the frame rate
+	public void setStepRate(double stepsPerSecond) {
+		simulation.startClock(stepsPerSecond);
+	}
+
+	// Time warp: steps per tick, 1 to Simulation.TIME_WARP_MAX
+	public void setTimeWarp(int timeWarp) {
+		simulation.setTimeWarp(timeWarp);
+	}
+
+	public int getTimeWarp() {
+		return simulation.getTimeWarp();
+	}
+
+	// Euler, adaptive or analytic (closed form, bound orbits only)
+	public void setMethod(OrbitEngine.Method method) {
+		simulation.setMethod(method);
+		simulation.requestFrame();
+	}
+
+	public OrbitEngine.Method getMethod() {
+		return simulation.getEngine().getMethod();
+	}
+
+	// Jump to the n-th apastron after the placement, see Simulation.jumpToOrbit()
+	public boolean jumpToOrbit(long n) {
+		boolean jumped = simulation.jumpToOrbit(n);
+		if (jumped)
+			simulation.requestFrame();
+		return jumped;
+	}
+
+	// Live orbit samples and turning points for subscribers outside the plots
+	public TrajectoryPublisher getTrajectoryPublisher() {
+		return simulation.getTrajectoryPublisher();
+	}
+
+	// Many test particles around the black hole, drawn into the orbit plot (0 =
+	// off)
+	public void releaseParticles(int n) {
+		((OrbitPlot) orbitPlot).releaseParticles(n);
+		simulation.requestFrame();
+	}
+
+	// Revolutions of the rosette in the orbit plot, drawn as soon as one radial
+	// period is known (0 = off)
+	public void setRosetteRevolutions(int revolutions) {
+		((OrbitPlot) orbitPlot).setRosetteRevolutions(revolutions);
+		simulation.requestFrame();
+	}
+
+	public int getRosetteRevolutions() {
+		return ((OrbitPlot) orbitPlot).getRosetteRevolutions();
+	}
+
+	// Black hole shadow with the lensed sky in the orbit plot
+	public void setShadowView(boolean shadowView) {
+		((OrbitPlot) orbitPlot).setShadowView(shadowView);
+		simulation.requestFrame();
+	}
+
 	public double getAngMomentum() {
-		return BasePlot.L;
+		return simulation.getEngine().getL();
 	}
 
 	public double getMass() {
-		return BasePlot.M;
+		return simulation.getEngine().getM();
 	}
 
 	public void setAngMomentum(double value) {
-		BasePlot.L = value;
-		BasePlot.plots.values().forEach(p -> p.clear());
-		if (!isRunning())
-			repaintContainer();
+		simulation.setParameters(value, getMass());
+		simulation.requestFrame();
 	}
 
 	public void setMass(double value) {
-		BasePlot.M = value;
-		BasePlot.plots.values().forEach(p -> p.clear());
-		if (!isRunning())
-			repaintContainer();
+		simulation.setParameters(getAngMomentum(), value);
+		simulation.requestFrame();
 	}
 
 	public void saveOrbitPlot(File file) {
@@ -61,12 +141,25 @@ public class OrbitsAnimation extends RunnableContainer {
 		}
 	}
 
+	@Override
+	public void terminate() {
+		super.terminate();
+		simulation.stopClock();
+		simulation.closeTrajectoryPublisher();
+		simulation.getMetrics().unregister();
+	}
+
 	@Override
 	protected void repaintContainer() {
 		// Remark: There is little clarity on when repaint is executed. But the response
 		// is clearly sooner or later an update() call in the plots. So, let us focus on
-		// that.
-		BasePlot.plots.values().forEach(p -> p.repaint());
+		// that. With off-EDT rendering, the frame is ready before and update() only
+		// blits it.
+		if (isRunning())
+			simulation.getMetrics().frame(getFrameRate());
+		if (simulation.isOffscreenRendering())
+			simulation.nextFrame();
+		simulation.repaint();
 	}
 
 	// Constructors
@@ -89,10 +182,13 @@ public class OrbitsAnimation extends RunnableContainer {
 		Toolkit.getDefaultToolkit().setDynamicLayout(false);
 
 		// Create plots
-		BasePlot.resetToDefaultParameters();
-		energyPlot = new EnergyPlot();
-		schwarzschildPlot = new SchwarzschildPlot();
-		orbitPlot = new OrbitPlot();
+		energyPlot = new EnergyPlot(simulation);
+		schwarzschildPlot = new SchwarzschildPlot(simulation);
+		orbitPlot = new OrbitPlot(simulation);
+		simulation.setOffscreenRendering(true);
+		simulation.getMetrics().register();
+		simulation.startClock(initialStepRate);
+		addStateListener(running -> simulation.setRunning(running));
 
 		// Layout
 		if (container == null && layoutType != LayoutType.NO_LAYOUT)
@@ -7,6 +7,9 @@ import java.awt.Panel;
 import ch.oliverfritz.util.DoubleField;
 import ch.oliverfritz.util.LabeledComponentPanel;
 import ch.oliverfritz.util.MoreUtil;
+import orbits.physics.OrbitEngine;
+import orbits.plots.OrbitPlot;
+import orbits.plots.Simulation;
 import orbits.resources.R;
 
 public class OrbitsController extends Panel {
@@ -38,10 +41,39 @@ public class OrbitsController extends Panel {
 		orbitsAnimation.setFrameRate((initSelection + 1) * fpsStep);
 		speed.addItemListener(e -> orbitsAnimation.setFrameRate((speed.getSelectedIndex() + 1) * fpsStep));
 
+		// Time warp in powers of ten
+		Choice warp = new Choice();
+		for (int w = 1; w <= Simulation.TIME_WARP_MAX; w *= 10)
+			warp.add(w + "x");
+		warp.addItemListener(e -> orbitsAnimation.setTimeWarp((int) Math.pow(10, warp.getSelectedIndex())));
+
+		// Engine method, and jumps along the closed form of the analytic one
+		Choice method = new Choice();
+		for (OrbitEngine.Method m : OrbitEngine.Method.values())
+			method.add(m.name());
+		method.select(orbitsAnimation.getMethod().ordinal());
+		method.addItemListener(
+				e -> orbitsAnimation.setMethod(OrbitEngine.Method.values()[method.getSelectedIndex()]));
+
+		DoubleField orbit = new DoubleField("%.0f", 1000);
+		orbit.addActionListener(e -> orbitsAnimation.jumpToOrbit((long) orbit.getValue()));
+
+		// Rosette revolutions, off or in powers of ten
+		Choice rosette = new Choice();
+		rosette.add("0");
+		for (int n = 10; n <= OrbitPlot.ROSETTE_MAX; n *= 10)
+			rosette.add(String.valueOf(n));
+		rosette.addItemListener(e -> orbitsAnimation.setRosetteRevolutions(
+				rosette.getSelectedIndex() == 0 ? 0 : (int) Math.pow(10, rosette.getSelectedIndex())));
+
 		// Layout
 		add(new LabeledComponentPanel(R.TXT_ANG, angMomentum));
 		add(new LabeledComponentPanel(R.TXT_MASS, mass));
 		add(new LabeledComponentPanel(R.TXT_SPEED, speed));
+		add(new LabeledComponentPanel(R.TXT_WARP, warp));
+		add(new LabeledComponentPanel(R.TXT_METHOD, method));
+		add(new LabeledComponentPanel(R.TXT_JUMP, orbit));
+		add(new LabeledComponentPanel(R.TXT_ROSETTE, rosette));
 		add(btnPauseCont);
 	}
 
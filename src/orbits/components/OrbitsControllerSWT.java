@@ -7,16 +7,21 @@ import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.layout.RowLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Spinner;
 
+import orbits.physics.OrbitEngine;
+import orbits.plots.OrbitPlot;
+import orbits.plots.Simulation;
 import orbits.resources.R;
 
 public class OrbitsControllerSWT extends Composite {
 
 	private OrbitsAnimation orbitsAnimation;
-	private Spinner sAng, sMass, sSpeed;
+	private Spinner sAng, sMass, sSpeed, sOrbit;
+	private Combo cWarp, cMethod, cRosette;
 
 	public OrbitsControllerSWT(Composite parent, OrbitsAnimation orbitsAnimation) {
 		super(parent, SWT.NONE);
@@ -40,6 +45,34 @@ public class OrbitsControllerSWT extends Composite {
 		sSpeed.setValues(orbitsAnimation.getFrameRate(), 25, 200, 0, 25, 1);
 		sSpeed.addSelectionListener(selectionListener);
 
+		Group gWarp = getLabeledGroup(R.TXT_WARP);
+		cWarp = new Combo(gWarp, SWT.READ_ONLY);
+		for (int w = 1; w <= Simulation.TIME_WARP_MAX; w *= 10)
+			cWarp.add(w + "x");
+		cWarp.select(0);
+		cWarp.addSelectionListener(selectionListener);
+
+		Group gMethod = getLabeledGroup(R.TXT_METHOD);
+		cMethod = new Combo(gMethod, SWT.READ_ONLY);
+		for (OrbitEngine.Method m : OrbitEngine.Method.values())
+			cMethod.add(m.name());
+		cMethod.select(orbitsAnimation.getMethod().ordinal());
+		cMethod.addSelectionListener(selectionListener);
+
+		// Jumps on Enter only, not for each increment
+		Group gOrbit = getLabeledGroup(R.TXT_JUMP);
+		sOrbit = new Spinner(gOrbit, SWT.BORDER);
+		sOrbit.setValues(1000, 0, Integer.MAX_VALUE, 0, 1, 1000);
+		sOrbit.addListener(SWT.DefaultSelection, e -> orbitsAnimation.jumpToOrbit(sOrbit.getSelection()));
+
+		Group gRosette = getLabeledGroup(R.TXT_ROSETTE);
+		cRosette = new Combo(gRosette, SWT.READ_ONLY);
+		cRosette.add("0");
+		for (int n = 10; n <= OrbitPlot.ROSETTE_MAX; n *= 10)
+			cRosette.add(String.valueOf(n));
+		cRosette.select(0);
+		cRosette.addSelectionListener(selectionListener);
+
 		Button bSP = new Button(this, SWT.PUSH);
 		if (new Random().nextBoolean())
 			getShell().setDefaultButton(bSP);
@@ -53,8 +86,16 @@ public class OrbitsControllerSWT extends Composite {
 			orbitsAnimation.setAngMomentum(0.01 * sAng.getSelection());
 		} else if (e.widget == sMass) {
 			orbitsAnimation.setMass(0.01 * sMass.getSelection());
-		} else if (e.widget == sSpeed)
+		} else if (e.widget == sSpeed) {
 			orbitsAnimation.setFrameRate(sSpeed.getSelection());
+		} else if (e.widget == cWarp) {
+			orbitsAnimation.setTimeWarp((int) Math.pow(10, cWarp.getSelectionIndex()));
+		} else if (e.widget == cMethod) {
+			orbitsAnimation.setMethod(OrbitEngine.Method.values()[cMethod.getSelectionIndex()]);
+		} else if (e.widget == cRosette) {
+			int i = cRosette.getSelectionIndex();
+			orbitsAnimation.setRosetteRevolutions(i == 0 ? 0 : (int) Math.pow(10, i));
+		}
 	});
 
 	// Helper methods
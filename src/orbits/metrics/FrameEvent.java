@@ -0,0 +1,29 @@
+package orbits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("orbits.Frame")
+@Label("Frame")
+@Category("Orbits")
+@Description("Animation frame with the interval since the previous one")
+@StackTrace(false)
+final class FrameEvent extends jdk.jfr.Event {
+
+	@Label("Requested Frame Rate")
+	int requestedFrameRate;
+
+	@Label("Interval")
+	@Timespan(Timespan.NANOSECONDS)
+	long interval;
+
+	@Label("Dropped Frames")
+	int dropped;
+
+	@Label("Trail Vertices")
+	long trailVertices;
+}
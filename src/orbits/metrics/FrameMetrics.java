@@ -0,0 +1,203 @@
+package orbits.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ch.oliverfritz.util.MoreUtil;
+import orbits.physics.OrbitEngine;
+
+// Frame and simulation metrics of one simulation: timing histograms per plot
+// and stage, achieved against requested frame rate, dropped frames, trail
+// vertices and turning points. Published as an MXBean and as JFR events
+// (category Orbits), which cost nothing while no recording is running.
+public final class FrameMetrics implements FrameMetricsMXBean {
+	private static final Logger LOGGER = MoreUtil.getLogger(FrameMetrics.class);
+
+	// Stages of a plot
+	public static enum Stage {
+		UPDATE("updateDynamicPart"), STEADY("paintSteadyPart"), DYNAMIC("paintDynamicPart");
+
+		private final String method;
+
+		Stage(String method) {
+			this.method = method;
+		}
+	}
+
+	// Smoothing of the achieved frame rate
+	private static final double SMOOTHING = 0.05;
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	// Timings per plot, one per stage, so that recording needs no key strings
+	private final Map<String, TimingHistogram[]> timings = new ConcurrentHashMap<String, TimingHistogram[]>();
+	private volatile int requestedFrameRate;
+	private volatile double meanInterval;
+	private volatile long frames, dropped, apastrons, periastrons;
+	private long lastFrame;
+	private volatile LongSupplier trailVertices = () -> 0;
+	private ObjectName name;
+
+	// Register with the platform MBean server under a unique name
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			name = new ObjectName("orbits:type=FrameMetrics,name=Simulation" + instances.incrementAndGet());
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			LOGGER.log(Level.WARNING, e.getMessage(), e);
+			name = null;
+		}
+	}
+
+	public void unregister() {
+		if (name == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException e) {
+			LOGGER.log(Level.WARNING, e.getMessage(), e);
+		}
+		name = null;
+	}
+
+	// Time of a stage that started at System.nanoTime() = start
+	public void stage(String plot, Stage stage, long start) {
+		long time = System.nanoTime() - start;
+		TimingHistogram[] stages = timings.computeIfAbsent(plot, k -> {
+			TimingHistogram[] h = new TimingHistogram[Stage.values().length];
+			for (int i = 0; i < h.length; i++)
+				h[i] = new TimingHistogram();
+			return h;
+		});
+		stages[stage.ordinal()].record(time);
+		PlotStageEvent event = new PlotStageEvent();
+		if (event.isEnabled()) {
+			event.plot = plot;
+			event.stage = stage.method;
+			event.time = time;
+			event.commit();
+		}
+	}
+
+	// A frame of the animation at the requested frame rate. Ticks that were
+	// skipped because the previous frame came too late count as dropped.
+	public synchronized void frame(int requestedFrameRate) {
+		long now = System.nanoTime();
+		this.requestedFrameRate = requestedFrameRate;
+		frames++;
+		if (lastFrame == 0) {
+			lastFrame = now;
+			return;
+		}
+		long interval = now - lastFrame;
+		lastFrame = now;
+		meanInterval = meanInterval == 0 ? interval : meanInterval + SMOOTHING * (interval - meanInterval);
+		int missed = 0;
+		if (requestedFrameRate > 0)
+			missed = (int) Math.max(0, Math.round(interval * requestedFrameRate / 1e9) - 1);
+		dropped += missed;
+
+		FrameEvent event = new FrameEvent();
+		if (event.isEnabled()) {
+			event.requestedFrameRate = requestedFrameRate;
+			event.interval = interval;
+			event.dropped = missed;
+			event.trailVertices = trailVertices.getAsLong();
+			event.commit();
+		}
+	}
+
+	public void turningPoint(OrbitEngine.Event type, OrbitEngine engine) {
+		if (type == OrbitEngine.Event.NONE)
+			return;
+		// Counted under the lock, like the frames, so that reset() loses none
+		synchronized (this) {
+			if (type == OrbitEngine.Event.APASTRON)
+				apastrons++;
+			else
+				periastrons++;
+		}
+		TurningPointEvent event = new TurningPointEvent();
+		if (event.isEnabled()) {
+			event.type = type.name();
+			event.tau = engine.getEventTau();
+			event.r = engine.getEventR();
+			event.phi = engine.getEventPhi();
+			event.commit();
+		}
+	}
+
+	public void setTrailVertices(LongSupplier trailVertices) {
+		this.trailVertices = trailVertices;
+	}
+
+	// MXBean attributes
+	@Override
+	public int getRequestedFrameRate() {
+		return requestedFrameRate;
+	}
+
+	@Override
+	public double getAchievedFrameRate() {
+		return meanInterval > 0 ? 1e9 / meanInterval : 0;
+	}
+
+	@Override
+	public long getFrameCount() {
+		return frames;
+	}
+
+	@Override
+	public long getDroppedFrameCount() {
+		return dropped;
+	}
+
+	@Override
+	public long getTrailVertexCount() {
+		return trailVertices.getAsLong();
+	}
+
+	@Override
+	public long getApastronCount() {
+		return apastrons;
+	}
+
+	@Override
+	public long getPeriastronCount() {
+		return periastrons;
+	}
+
+	@Override
+	public Map<String, TimingStatistics> getTimings() {
+		Map<String, TimingStatistics> map = new TreeMap<String, TimingStatistics>();
+		timings.forEach((plot, stages) -> {
+			for (Stage stage : Stage.values()) {
+				TimingStatistics statistics = stages[stage.ordinal()].getStatistics();
+				if (statistics.getCount() > 0)
+					map.put(plot + ": " + stage.method, statistics);
+			}
+		});
+		return map;
+	}
+
+	@Override
+	public synchronized void reset() {
+		timings.values().forEach(stages -> {
+			for (TimingHistogram h : stages)
+				h.reset();
+		});
+		frames = dropped = apastrons = periastrons = 0;
+		lastFrame = 0;
+		meanInterval = 0;
+	}
+}
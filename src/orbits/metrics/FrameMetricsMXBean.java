@@ -0,0 +1,26 @@
+package orbits.metrics;
+
+import java.util.Map;
+
+// Live metrics of one simulation, for JConsole and JMC
+public interface FrameMetricsMXBean {
+
+	int getRequestedFrameRate();
+
+	double getAchievedFrameRate();
+
+	long getFrameCount();
+
+	long getDroppedFrameCount();
+
+	long getTrailVertexCount();
+
+	long getApastronCount();
+
+	long getPeriastronCount();
+
+	// Timings per plot and stage, e.g. "Orbit: paintDynamicPart"
+	Map<String, TimingStatistics> getTimings();
+
+	void reset();
+}
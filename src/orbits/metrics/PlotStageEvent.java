@@ -0,0 +1,26 @@
+package orbits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("orbits.PlotStage")
+@Label("Plot Stage")
+@Category("Orbits")
+@Description("Time of one update or paint stage of a plot")
+@StackTrace(false)
+final class PlotStageEvent extends jdk.jfr.Event {
+
+	@Label("Plot")
+	String plot;
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long time;
+}
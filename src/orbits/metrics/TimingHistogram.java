@@ -0,0 +1,61 @@
+package orbits.metrics;
+
+import java.util.Arrays;
+
+// Histogram of durations with logarithmic buckets: four per power of two of
+// nanoseconds, i.e., a relative resolution of about 20 %. Recording is cheap
+// and does not allocate.
+public final class TimingHistogram {
+
+	private static final int SUB_BITS = 2;
+	private static final int BUCKETS = 64 << SUB_BITS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count, total, max;
+
+	public synchronized void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts[bucket(nanos)]++;
+		count++;
+		total += nanos;
+		max = Math.max(max, nanos);
+	}
+
+	public synchronized void reset() {
+		Arrays.fill(counts, 0);
+		count = total = max = 0;
+	}
+
+	public synchronized TimingStatistics getStatistics() {
+		return new TimingStatistics(count, count > 0 ? total / 1e3 / count : 0, max / 1e3, percentile(0.5),
+				percentile(0.9), percentile(0.99));
+	}
+
+	// Upper limit of the bucket with the given fraction of the durations below, in
+	// microseconds
+	private double percentile(double fraction) {
+		long limit = (long) Math.ceil(fraction * count), sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			sum += counts[i];
+			if (sum >= limit && sum > 0)
+				return Math.min(upper(i), max) / 1e3;
+		}
+		return 0;
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < (1 << SUB_BITS))
+			return (int) nanos;
+		int octave = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (octave - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+		return ((octave - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+
+	private static long upper(int bucket) {
+		if (bucket < (1 << SUB_BITS))
+			return bucket;
+		int octave = (bucket >> SUB_BITS) + SUB_BITS - 1;
+		long sub = bucket & ((1 << SUB_BITS) - 1);
+		return ((1L << SUB_BITS) + sub + 1) << (octave - SUB_BITS);
+	}
+}
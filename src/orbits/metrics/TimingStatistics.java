@@ -0,0 +1,51 @@
+package orbits.metrics;
+
+import java.beans.ConstructorProperties;
+
+// Snapshot of a timing histogram in microseconds. Shown as composite data in
+// JConsole and JMC.
+public final class TimingStatistics {
+
+	private final long count;
+	private final double mean, max, p50, p90, p99;
+
+	@ConstructorProperties({ "count", "mean", "max", "p50", "p90", "p99" })
+	public TimingStatistics(long count, double mean, double max, double p50, double p90, double p99) {
+		this.count = count;
+		this.mean = mean;
+		this.max = max;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getP50() {
+		return p50;
+	}
+
+	public double getP90() {
+		return p90;
+	}
+
+	public double getP99() {
+		return p99;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f us", count, mean, p50, p90, p99,
+				max);
+	}
+}
@@ -0,0 +1,25 @@
+package orbits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("orbits.TurningPoint")
+@Label("Turning Point")
+@Category("Orbits")
+@StackTrace(false)
+final class TurningPointEvent extends jdk.jfr.Event {
+
+	@Label("Type")
+	String type;
+
+	@Label("Proper Time")
+	double tau;
+
+	@Label("Radius")
+	double r;
+
+	@Label("Angle")
+	double phi;
+}
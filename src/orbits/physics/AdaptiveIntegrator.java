@@ -0,0 +1,194 @@
+package orbits.physics;
+
+// Embedded Runge-Kutta integrator (Dormand-Prince 5(4)) with step size control
+// for the geodesic equations in proper time tau:
+//   dr/dtau = v, dv/dtau = -M/r^2 + L^2/r^3 - 3ML^2/r^4, dphi/dtau = L/r^2.
+// The second order form has no square root and passes turning points smoothly.
+// They show up as sign changes of v and are located within the step.
+final class AdaptiveIntegrator {
+
+	// Coefficients
+	private static final double A21 = 1d / 5;
+	private static final double A31 = 3d / 40, A32 = 9d / 40;
+	private static final double A41 = 44d / 45, A42 = -56d / 15, A43 = 32d / 9;
+	private static final double A51 = 19372d / 6561, A52 = -25360d / 2187, A53 = 64448d / 6561, A54 = -212d / 729;
+	private static final double A61 = 9017d / 3168, A62 = -355d / 33, A63 = 46732d / 5247, A64 = 49d / 176,
+			A65 = -5103d / 18656;
+	private static final double B1 = 35d / 384, B3 = 500d / 1113, B4 = 125d / 192, B5 = -2187d / 6784, B6 = 11d / 84;
+	// Difference between 5th and 4th order weights
+	private static final double E1 = 71d / 57600, E3 = -71d / 16695, E4 = 71d / 1920, E5 = -17253d / 339200,
+			E6 = 22d / 525, E7 = -1d / 40;
+
+	// Step size control
+	private static final double SAFETY = 0.9, MIN_SCALE = 0.2, MAX_SCALE = 5;
+	static final double TOLERANCE_DEF = 1e-10;
+
+	// Stage derivatives of r, v and phi. The last stage is the derivative at the
+	// new point (first same as last).
+	private final double[] kr = new double[7], kv = new double[7], kp = new double[7];
+
+	private double L, M, tol = TOLERANCE_DEF;
+	private double h = 1;
+
+	// Statistics
+	long steps, rejected;
+	double error, maxError;
+
+	// Location of the last turning point
+	double eventTau, eventR, eventPhi;
+
+	// Interval left over by the last call of advance()
+	double remaining;
+
+	void setParameters(double L, double M) {
+		this.L = L;
+		this.M = M;
+	}
+
+	void setTolerance(double tol) {
+		this.tol = tol;
+	}
+
+	double getTolerance() {
+		return tol;
+	}
+
+	void resetStatistics() {
+		steps = rejected = 0;
+		error = maxError = 0;
+	}
+
+	private double acceleration(double r) {
+		double u = 1 / r;
+		double lu = L * u;
+		return u * u * (-M + lu * L * (1 - 3 * M * u));
+	}
+
+	private void derivatives(int i, double r, double v) {
+		kr[i] = v;
+		kv[i] = acceleration(r);
+		kp[i] = L / (r * r);
+	}
+
+	// Integrate at most up to dtau. Stops early after a step that contains a
+	// turning point (returned as apastron or periastron) or that crosses the
+	// horizon. The caller loops until nothing is remaining.
+	OrbitEngine.Event advance(OrbitState s, double dtau) {
+		double r = s.r, v = s.vr, phi = s.phi;
+		derivatives(0, r, v);
+		while (dtau > 0) {
+			boolean last = h >= dtau;
+			double hs = last ? dtau : h;
+
+			// Stages
+			double r2 = r + hs * A21 * kr[0];
+			double v2 = v + hs * A21 * kv[0];
+			derivatives(1, r2, v2);
+			double r3 = r + hs * (A31 * kr[0] + A32 * kr[1]);
+			double v3 = v + hs * (A31 * kv[0] + A32 * kv[1]);
+			derivatives(2, r3, v3);
+			double r4 = r + hs * (A41 * kr[0] + A42 * kr[1] + A43 * kr[2]);
+			double v4 = v + hs * (A41 * kv[0] + A42 * kv[1] + A43 * kv[2]);
+			derivatives(3, r4, v4);
+			double r5 = r + hs * (A51 * kr[0] + A52 * kr[1] + A53 * kr[2] + A54 * kr[3]);
+			double v5 = v + hs * (A51 * kv[0] + A52 * kv[1] + A53 * kv[2] + A54 * kv[3]);
+			derivatives(4, r5, v5);
+			double r6 = r + hs * (A61 * kr[0] + A62 * kr[1] + A63 * kr[2] + A64 * kr[3] + A65 * kr[4]);
+			double v6 = v + hs * (A61 * kv[0] + A62 * kv[1] + A63 * kv[2] + A64 * kv[3] + A65 * kv[4]);
+			derivatives(5, r6, v6);
+			double rn = r + hs * (B1 * kr[0] + B3 * kr[2] + B4 * kr[3] + B5 * kr[4] + B6 * kr[5]);
+			double vn = v + hs * (B1 * kv[0] + B3 * kv[2] + B4 * kv[3] + B5 * kv[4] + B6 * kv[5]);
+			double pn = phi + hs * (B1 * kp[0] + B3 * kp[2] + B4 * kp[3] + B5 * kp[4] + B6 * kp[5]);
+
+			// Stages too close to the singularity: retry with a smaller step
+			if (!(Math.min(Math.min(r2, r3), Math.min(Math.min(r4, r5), Math.min(r6, rn))) > M)) {
+				h = hs / 4;
+				rejected++;
+				continue;
+			}
+			derivatives(6, rn, vn);
+
+			// Error estimate, scaled by the tolerance
+			double er = hs * (E1 * kr[0] + E3 * kr[2] + E4 * kr[3] + E5 * kr[4] + E6 * kr[5] + E7 * kr[6]);
+			double ev = hs * (E1 * kv[0] + E3 * kv[2] + E4 * kv[3] + E5 * kv[4] + E6 * kv[5] + E7 * kv[6]);
+			double ep = hs * (E1 * kp[0] + E3 * kp[2] + E4 * kp[3] + E5 * kp[4] + E6 * kp[5] + E7 * kp[6]);
+			double err = Math.max(Math.abs(er) / (tol * (M + Math.max(Math.abs(r), Math.abs(rn)))),
+					Math.max(Math.abs(ev) / (tol * (1 + Math.max(Math.abs(v), Math.abs(vn)))),
+							Math.abs(ep) / (tol * (1 + Math.abs(pn)))));
+
+			// New step size for the next try (or the next step)
+			double scale = err == 0 ? MAX_SCALE : SAFETY * Math.pow(err, -0.2);
+			double hNew = hs * Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+			if (!(err <= 1)) {
+				h = err > 1 ? hNew : hs / 4;
+				rejected++;
+				continue;
+			}
+			// Keep the step size of the last full step if the interval was clipped
+			if (!last || hNew < h)
+				h = hNew;
+			steps++;
+			error = err;
+			maxError = Math.max(maxError, err);
+
+			// Turning point within the step
+			OrbitEngine.Event event = OrbitEngine.Event.NONE;
+			if (v * vn < 0 || (vn == 0 && v != 0)) {
+				locateTurningPoint(s.tau, hs, r, v, phi, rn, vn, pn);
+				event = v > 0 ? OrbitEngine.Event.APASTRON : OrbitEngine.Event.PERIASTRON;
+			}
+
+			// Accept
+			r = rn;
+			v = vn;
+			phi = pn;
+			s.tau += hs;
+			dtau -= hs;
+			kr[0] = kr[6];
+			kv[0] = kv[6];
+			kp[0] = kp[6];
+			if (event != OrbitEngine.Event.NONE || r <= 2 * M) {
+				store(s, r, v, phi);
+				remaining = dtau;
+				return event;
+			}
+		}
+		store(s, r, v, phi);
+		remaining = 0;
+		return OrbitEngine.Event.NONE;
+	}
+
+	private static void store(OrbitState s, double r, double v, double phi) {
+		s.r = r;
+		s.vr = v;
+		s.phi = phi;
+		if (v != 0)
+			s.direction = v > 0 ? 1 : -1;
+	}
+
+	// Find v = 0 on the cubic Hermite interpolant of v (bisection, only done at
+	// turning points) and evaluate r and phi there the same way.
+	private void locateTurningPoint(double tau, double hs, double r, double v, double phi, double rn, double vn,
+			double pn) {
+		double lo = 0, hi = 1;
+		double sign = Math.signum(v);
+		for (int i = 0; i < 50; i++) {
+			double mid = 0.5 * (lo + hi);
+			if (sign * hermite(mid, hs, v, kv[0], vn, kv[6]) > 0)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		double t = 0.5 * (lo + hi);
+		eventTau = tau + t * hs;
+		eventR = hermite(t, hs, r, kr[0], rn, kr[6]);
+		eventPhi = hermite(t, hs, phi, kp[0], pn, kp[6]);
+	}
+
+	private static double hermite(double t, double hs, double y0, double d0, double y1, double d1) {
+		double t2 = t * t;
+		double t3 = t2 * t;
+		return (2 * t3 - 3 * t2 + 1) * y0 + (t3 - 2 * t2 + t) * hs * d0 + (-2 * t3 + 3 * t2) * y1
+				+ (t3 - t2) * hs * d1;
+	}
+}
@@ -0,0 +1,284 @@
+package orbits.physics;
+
+import java.util.Arrays;
+
+// Closed-form bound orbit. With u = 1/r, the orbit equation is
+//   (du/dphi)^2 = 2M (u - u1)(u - u2)(u - u3),  u1 < u2 < u3,
+// with apastron 1/u1 and periastron 1/u2. Its solution is
+//   u(phi) = u1 + (u2 - u1) sn^2(w phi, k),  k^2 = (u2 - u1)/(u3 - u1),
+//   w = sqrt(M (u3 - u1) / 2),
+// with phi = 0 at an apastron. Proper time follows from dtau/dphi = 1/(L u^2),
+// integrated once over half a radial period with Gauss-Legendre and kept in a
+// table, so that r, phi and tau can be evaluated at any time in O(1).
+public final class AnalyticOrbit {
+
+	// Table of proper time over half a radial period
+	private static final int CELLS = 64;
+
+	// 4-point Gauss-Legendre nodes and weights on [-1, 1], plenty for cells of
+	// K/CELLS
+	private static final double[] GL_X = { -0.8611363115940526, -0.3399810435848563, 0.3399810435848563,
+			0.8611363115940526 };
+	private static final double[] GL_W = { 0.3478548451374538, 0.6521451548625461, 0.6521451548625461,
+			0.3478548451374538 };
+
+	private final double L, M, e;
+	private final double u1, u2, u3, k2, w, kK;
+	private final double phiPeriod, tauPeriod;
+	private final double[] tauTable = new double[CELLS + 1];
+
+	// Inverse table psi(tau) with slopes, for cubic Hermite start values
+	private final double[] psiTable = new double[CELLS + 1];
+	private final double[] slopeTable = new double[CELLS + 1];
+
+	// Descending Landen sequence for the Jacobi functions
+	private double[] landenA, landenB;
+	private double landenC;
+
+	private AnalyticOrbit(double L, double M, double u1, double u2, double u3) {
+		this.L = L;
+		this.M = M;
+		this.u1 = u1;
+		this.u2 = u2;
+		this.u3 = u3;
+		k2 = (u2 - u1) / (u3 - u1);
+		w = Math.sqrt(M * (u3 - u1) / 2);
+		kK = ellipticK(k2);
+		initLanden();
+		phiPeriod = 2 * kK / w;
+		e = Math.sqrt((1 - 2 * M * u1) * (1 + L * L * u1 * u1));
+
+		// Proper time at the table nodes in psi = w phi over [0, K]
+		double h = kK / CELLS;
+		for (int i = 0; i < CELLS; i++)
+			tauTable[i + 1] = tauTable[i] + integrate(i * h, (i + 1) * h);
+		tauPeriod = 2 * tauTable[CELLS];
+
+		// The inverse from the first table and Newton
+		for (int j = 0; j <= CELLS; j++) {
+			psiTable[j] = newton(tauTable[CELLS] * j / CELLS, searchTable(tauTable[CELLS] * j / CELLS), 8);
+			slopeTable[j] = 1 / integrand(psiTable[j]);
+		}
+	}
+
+	// The orbit through a turning point at r0 (a particle at rest there), or null
+	// if the motion from there is not bound
+	public static AnalyticOrbit fromTurningPoint(double L, double M, double r0) {
+		if (!(r0 > 2 * M))
+			return null;
+		// u0 is a root of u^3 - u^2/(2M) + u/L^2 + (E^2 - 1)/(2M L^2). The other two
+		// solve the deflated quadratic.
+		double u0 = 1 / r0;
+		double b = u0 - 1 / (2 * M);
+		double c = 1 / (L * L) + u0 * b;
+		double disc = b * b - 4 * c;
+		if (disc <= 0)
+			return null;
+		double q = -0.5 * (b + Math.copySign(Math.sqrt(disc), b));
+		double va = q, vb = c / q;
+		double lo = Math.min(va, vb), hi = Math.max(va, vb);
+
+		// u0 must be the outer or inner turning point of the well, not the one
+		// beyond the barrier
+		if (u0 < hi && u0 <= lo && u0 > 0)
+			return lo - u0 > 0 ? new AnalyticOrbit(L, M, u0, lo, hi) : null;
+		if (u0 > lo && u0 < hi && lo > 0)
+			return new AnalyticOrbit(L, M, lo, u0, hi);
+		return null;
+	}
+
+	// Radius at phi (from an apastron)
+	public double rOfPhi(double phi) {
+		double sn = sn(w * phi);
+		return 1 / (u1 + (u2 - u1) * sn * sn);
+	}
+
+	// Radial velocity dr/dtau at phi
+	public double vrOfPhi(double phi) {
+		double[] cd = new double[2];
+		double sn = sncndn(w * phi, cd);
+		return -2 * L * w * (u2 - u1) * sn * cd[0] * cd[1];
+	}
+
+	// Proper time from an apastron to phi
+	public double tauOfPhi(double phi) {
+		double psi = w * phi;
+		double n = Math.floor(psi / (2 * kK));
+		double rest = psi - 2 * kK * n;
+		double t = n * tauPeriod;
+		if (rest > kK)
+			return t + tauPeriod - halfTau(2 * kK - rest);
+		return t + halfTau(rest);
+	}
+
+	// Inverse of tauOfPhi()
+	public double phiOfTau(double tau) {
+		double n = Math.floor(tau / tauPeriod);
+		double rest = tau - n * tauPeriod;
+		double psi;
+		if (rest > tauPeriod / 2)
+			psi = 2 * kK - halfPsi(tauPeriod - rest);
+		else
+			psi = halfPsi(rest);
+		return n * phiPeriod + psi / w;
+	}
+
+	private double halfTau(double psi) {
+		int i = Math.min(CELLS - 1, (int) (psi / kK * CELLS));
+		return tauTable[i] + integrate(i * kK / CELLS, psi);
+	}
+
+	// psi in [0, K] with halfTau(psi) = tau: cubic Hermite start from the
+	// inverse table, then Newton
+	private double halfPsi(double tau) {
+		double h = tauTable[CELLS] / CELLS;
+		if (!(h > 0))
+			return 0;
+		double x = Math.max(0, Math.min(CELLS, tau / h));
+		int j = Math.min(CELLS - 1, (int) x);
+		double t = x - j, t2 = t * t, t3 = t2 * t;
+		double psi = (2 * t3 - 3 * t2 + 1) * psiTable[j] + (t3 - 2 * t2 + t) * h * slopeTable[j]
+				+ (-2 * t3 + 3 * t2) * psiTable[j + 1] + (t3 - t2) * h * slopeTable[j + 1];
+		return newton(tau, psi, 1);
+	}
+
+	// Start value by linear interpolation in the table of tau
+	private double searchTable(double tau) {
+		int lo = 0, hi = CELLS;
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (tauTable[mid] <= tau)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		double dt = tauTable[lo + 1] - tauTable[lo];
+		return kK / CELLS * (lo + (dt > 0 ? (tau - tauTable[lo]) / dt : 0));
+	}
+
+	private double newton(double tau, double psi, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			double step = (halfTau(psi) - tau) / integrand(psi);
+			psi = Math.max(0, Math.min(kK, psi - step));
+			if (Math.abs(step) <= 1e-13 * kK)
+				break;
+		}
+		return psi;
+	}
+
+	// dtau/dpsi
+	private double integrand(double psi) {
+		double sn = sn(psi);
+		double u = u1 + (u2 - u1) * sn * sn;
+		return 1 / (w * L * u * u);
+	}
+
+	private double integrate(double a, double b) {
+		double m = (a + b) / 2, h = (b - a) / 2, sum = 0;
+		for (int i = 0; i < GL_X.length; i++)
+			sum += GL_W[i] * integrand(m + h * GL_X[i]);
+		return sum * h;
+	}
+
+	private double sn(double u) {
+		return sncndn(u, null);
+	}
+
+	// Jacobi sn (and cn, dn into cd) by descending Landen transformation as in
+	// Numerical Recipes. The AGM sequence only depends on k, so it is set up once.
+	private double sncndn(double u, double[] cd) {
+		if (landenC == 0) {
+			// Circular orbit
+			if (cd != null) {
+				cd[0] = Math.cos(u);
+				cd[1] = 1;
+			}
+			return Math.sin(u);
+		}
+		u *= landenC;
+		double sn = Math.sin(u), cn = Math.cos(u), dn = 1;
+		if (sn != 0) {
+			double a = cn / sn, c = landenC * a;
+			for (int i = landenA.length - 1; i >= 0; i--) {
+				double b = landenA[i];
+				a *= c;
+				c *= dn;
+				dn = (landenB[i] + a) / (b + a);
+				a = c / b;
+			}
+			a = 1 / Math.sqrt(c * c + 1);
+			sn = sn >= 0 ? a : -a;
+			cn = c * sn;
+		}
+		if (cd != null) {
+			cd[0] = cn;
+			cd[1] = dn;
+		}
+		return sn;
+	}
+
+	private void initLanden() {
+		if (k2 <= 0)
+			return;
+		double[] em = new double[13], en = new double[13];
+		double a = 1, c = 1, emc = 1 - k2;
+		int n = 0;
+		while (n < em.length) {
+			em[n] = a;
+			en[n++] = emc = Math.sqrt(emc);
+			c = 0.5 * (a + emc);
+			if (Math.abs(a - emc) <= 1e-8 * a)
+				break;
+			emc *= a;
+			a = c;
+		}
+		landenA = Arrays.copyOf(em, n);
+		landenB = Arrays.copyOf(en, n);
+		landenC = c;
+	}
+
+	// Complete elliptic integral of the first kind by the arithmetic-geometric mean
+	static double ellipticK(double k2) {
+		double a = 1, b = Math.sqrt(1 - k2);
+		while (Math.abs(a - b) > 1e-15 * a) {
+			double t = (a + b) / 2;
+			b = Math.sqrt(a * b);
+			a = t;
+		}
+		return Math.PI / (2 * a);
+	}
+
+	// Get methods
+	public double getL() {
+		return L;
+	}
+
+	public double getM() {
+		return M;
+	}
+
+	public double getEnergy() {
+		return e;
+	}
+
+	public double getApastron() {
+		return 1 / u1;
+	}
+
+	public double getPeriastron() {
+		return 1 / u2;
+	}
+
+	// Proper time and angle of one radial period (apastron to apastron)
+	public double getRadialPeriod() {
+		return tauPeriod;
+	}
+
+	public double getAngularPeriod() {
+		return phiPeriod;
+	}
+
+	public double getPeriastronAdvance() {
+		return phiPeriod - 2 * Math.PI;
+	}
+}
@@ -0,0 +1,98 @@
+package orbits.physics;
+
+public class EffectivePotential {
+
+	// Parameters: angular momentum and mass
+	protected final double L, M;
+
+	// Extreme points of the potential and a good plot range. rVmin < 0 is a flag
+	// for a potential without a minimum, i.e., without periodic orbits.
+	private final double rVmin, rVmax, eVmin, eVmax, rMax;
+
+	public EffectivePotential(double L, double M) {
+		this.L = L;
+		this.M = M;
+
+		// Find min and max of energy (if any)
+		double disc = L * L - 12 * M * M;
+		double rMax;
+		if (disc < 0) {
+			rVmin = -1.0; // Flag
+			rVmax = L * L / 2 / M;
+			eVmin = 0.75;
+			rMax = 1.75 * rVmax;
+		} else {
+			rVmin = L * (L + Math.sqrt(disc)) / 2 / M;
+			rVmax = L * (L - Math.sqrt(disc)) / 2 / M;
+			eVmin = exact(rVmin);
+			rMax = 1.75 * rVmin;
+		}
+		eVmax = exact(rVmax);
+		// The potential approaches 1 from below, so give up widening if the maximum
+		// is above that.
+		while (exact(rMax) < eVmax && rMax < 10 * Math.max(rVmin, rVmax))
+			rMax *= 1.05;
+		this.rMax = rMax;
+	}
+
+	// Effective potential for a given radius
+	public double eG(double r) {
+		return exact(r);
+	}
+
+	// Exact values for the first n radii at once, e.g. one per plot column (also
+	// for a table)
+	public void eG(double[] r, double[] e, int n) {
+		PotentialKernels.eG(L, M, r, e, n);
+	}
+
+	// Its derivative with respect to r
+	public double dG(double r) {
+		return exactDerivative(r);
+	}
+
+	private double exact(double r) {
+		return Math.sqrt((1 - 2 * M / r) * (1 + (L / r) * (L / r)));
+	}
+
+	// d/dr sqrt(W) = W'/(2 sqrt(W)) with W = (1 - 2M/r)(1 + L^2/r^2)
+	private double exactDerivative(double r) {
+		double l2 = (L / r) * (L / r);
+		double dW = (2 * M * (1 + l2) - 2 * (r - 2 * M) * l2) / (r * r);
+		return dW / (2 * exact(r));
+	}
+
+	// Get methods
+	public double getL() {
+		return L;
+	}
+
+	public double getM() {
+		return M;
+	}
+
+	public double getRVmin() {
+		return rVmin;
+	}
+
+	public double getRVmax() {
+		return rVmax;
+	}
+
+	public double getEVmin() {
+		return eVmin;
+	}
+
+	public double getEVmax() {
+		return eVmax;
+	}
+
+	public double getRMax() {
+		return rMax;
+	}
+
+	// Periodic orbits exist only with a minimum of the potential
+	public boolean hasMinimum() {
+		return rVmin > 0;
+	}
+}
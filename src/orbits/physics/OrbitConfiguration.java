@@ -0,0 +1,108 @@
+package orbits.physics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// One orbit of a batch run: parameters, start radius, proper time to run and
+// how to step. In a parameter file, each line is
+//   L M r0 duration [interval] [method] [tolerance]
+// separated by blanks or commas. The particle is sampled every interval of
+// proper time. Empty lines and lines starting with # are ignored.
+public final class OrbitConfiguration {
+
+	public static final double INTERVAL_DEF = 1;
+
+	private final double L, M, r0, duration, interval;
+	private final OrbitEngine.Method method;
+	private final double tolerance;
+
+	public OrbitConfiguration(double L, double M, double r0, double duration, double interval,
+			OrbitEngine.Method method, double tolerance) {
+		if (!(L > 0 && M > 0 && r0 > 0 && duration >= 0 && interval > 0 && tolerance > 0))
+			throw new IllegalArgumentException(String.format(Locale.ROOT,
+					"Invalid orbit L=%g M=%g r0=%g duration=%g interval=%g tolerance=%g", L, M, r0, duration,
+					interval, tolerance));
+		this.L = L;
+		this.M = M;
+		this.r0 = r0;
+		this.duration = duration;
+		this.interval = interval;
+		this.method = method;
+		this.tolerance = tolerance;
+	}
+
+	public static List<OrbitConfiguration> read(Path file) throws IOException {
+		List<OrbitConfiguration> list = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int n = 0;
+			while ((line = reader.readLine()) != null) {
+				n++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				try {
+					list.add(parse(line));
+				} catch (IllegalArgumentException e) {
+					throw new IOException(file + ":" + n + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return list;
+	}
+
+	public static OrbitConfiguration parse(String line) {
+		String[] f = line.trim().split("[\\s,]+");
+		if (f.length < 4)
+			throw new IllegalArgumentException("Expected L M r0 duration [interval] [method] [tolerance]");
+		return new OrbitConfiguration(Double.parseDouble(f[0]), Double.parseDouble(f[1]), Double.parseDouble(f[2]),
+				Double.parseDouble(f[3]), f.length > 4 ? Double.parseDouble(f[4]) : INTERVAL_DEF,
+				f.length > 5 ? OrbitEngine.Method.valueOf(f[5].toUpperCase(Locale.ROOT)) : OrbitEngine.Method.ADAPTIVE,
+				f.length > 6 ? Double.parseDouble(f[6]) : AdaptiveIntegrator.TOLERANCE_DEF);
+	}
+
+	// Number of samples including the start
+	public int getSamples() {
+		return (int) Math.min(Integer.MAX_VALUE, (long) Math.floor(duration / interval) + 1);
+	}
+
+	// Get methods
+	public double getL() {
+		return L;
+	}
+
+	public double getM() {
+		return M;
+	}
+
+	public double getR0() {
+		return r0;
+	}
+
+	public double getDuration() {
+		return duration;
+	}
+
+	public double getInterval() {
+		return interval;
+	}
+
+	public OrbitEngine.Method getMethod() {
+		return method;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%g %g %g %g %g %s %g", L, M, r0, duration, interval, method, tolerance);
+	}
+}
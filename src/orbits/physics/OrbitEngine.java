@@ -0,0 +1,453 @@
+package orbits.physics;
+
+// Headless orbit integration. An engine owns its parameters and particle
+// state, so any number of engines can run side by side (e.g. in batch jobs).
+// The plots are only views on an engine.
+public final class OrbitEngine {
+
+	// These default values produce a nice potential
+	public static final double L_DEF = 3.57d;
+	public static final double M_DEF = 1d;
+
+	// Default number of creep steps across the plot range at turning points (Euler
+	// method only). The plots set this to their width in pixels.
+	private static final int RESOLUTION_DEF = 1000;
+
+	// What happened during a step
+	public static enum Event {
+		NONE, APASTRON, PERIASTRON
+	}
+
+	// Integration methods: the original explicit Euler step per frame with creeping
+	// turnarounds, the adaptive Runge-Kutta integrator with error control, or the
+	// closed-form solution for bound orbits. Orbits that are not bound fall back
+	// from the analytic to the adaptive method.
+	public static enum Method {
+		EULER, ADAPTIVE, ANALYTIC
+	}
+
+	private EffectivePotential potential;
+	private final OrbitState state = new OrbitState();
+	private final AdaptiveIntegrator integrator = new AdaptiveIntegrator();
+	private Method method = Method.ADAPTIVE;
+	private boolean tabulated;
+	private TurningPointListener listener;
+	private int resolution = RESOLUTION_DEF;
+	private double turnStep;
+
+	// Full turns removed from phi by range reduction
+	private long turns;
+
+	// Location of the last turning point (or the start point)
+	private double eventTau, eventR, eventPhi;
+
+	// Euler statistics
+	private long eulerSteps;
+
+	// Closed-form orbit from the last placement (created on demand), and where in
+	// it the particle was put: proper time since an apastron, and the angle
+	private AnalyticOrbit analytic;
+	private boolean analyticValid;
+	private double startR, startPhi, startTau, startOrbitPhi;
+
+	// Constructors
+	public OrbitEngine() {
+		this(L_DEF, M_DEF);
+	}
+
+	public OrbitEngine(double L, double M) {
+		setParameters(L, M);
+	}
+
+	// Set new parameters. The particle has to be put again afterwards.
+	public void setParameters(double L, double M) {
+		potential = tabulated ? TabulatedPotential.of(L, M) : new EffectivePotential(L, M);
+		integrator.setParameters(L, M);
+		analyticValid = false;
+		analytic = null;
+		turnStep = potential.getRMax() / resolution;
+	}
+
+	// Number of creep steps across [0, rMax] used at turning points
+	public void setResolution(int resolution) {
+		this.resolution = Math.max(1, resolution);
+		turnStep = potential.getRMax() / this.resolution;
+	}
+
+	public void setMethod(Method method) {
+		// The adaptive integrator needs the radial velocity, which the Euler method
+		// only knows by its direction.
+		if (method != Method.EULER && this.method == Method.EULER)
+			state.vr = state.direction * radialSpeed(state.r);
+		this.method = method;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	// Evaluate the potential from an interpolation table instead of exactly. The
+	// Euler method and the energy plot use it. The adaptive integrator uses the
+	// exact force, which is cheaper than the table.
+	public void setTabulatedPotential(boolean tabulated) {
+		if (tabulated != this.tabulated) {
+			this.tabulated = tabulated;
+			potential = tabulated ? TabulatedPotential.of(getL(), getM())
+					: new EffectivePotential(getL(), getM());
+		}
+	}
+
+	public boolean isTabulatedPotential() {
+		return tabulated;
+	}
+
+	// Relative and absolute error tolerance per step of the adaptive integrator
+	public void setTolerance(double tolerance) {
+		integrator.setTolerance(tolerance);
+	}
+
+	public double getTolerance() {
+		return integrator.getTolerance();
+	}
+
+	public void setTurningPointListener(TurningPointListener listener) {
+		this.listener = listener;
+	}
+
+	// Lower limit for the start radius. Without placement, start near rVmax. With
+	// placement, for a falling orbit, start at least outside the black hole, and
+	// for a periodic orbit, start at least beyond the maximum effective potential.
+	public double minStartRadius(boolean placed) {
+		double M = potential.getM();
+		return !potential.hasMinimum() && placed ? 4 * M : potential.getRVmax();
+	}
+
+	// Put the particle at rest at radius r0. Returns true for non-periodic orbits.
+	public boolean putParticle(double r0) {
+		state.tau = 0;
+		state.r = r0;
+		state.vr = 0;
+		state.eTot = potential.eG(r0);
+		state.direction = r0 < potential.getRVmin() ? 1 : -1;
+		state.speedFactor = 1;
+		turns = 0;
+		eventTau = 0;
+		eventR = r0;
+		eventPhi = state.phi;
+		startR = r0;
+		startPhi = state.phi;
+		analyticValid = false;
+		analytic = null;
+		return !potential.hasMinimum() || state.eTot > potential.getEVmax();
+	}
+
+	public boolean isCaptured() {
+		return state.r <= 2 * potential.getM();
+	}
+
+	// Advance by one step, i.e., one frame in the animation. Returns the last
+	// turning point passed.
+	public Event step() {
+		// No more dynamics below the critical radius
+		if (isCaptured())
+			return Event.NONE;
+
+		// Slow down inside the black hole
+		state.speedFactor = state.r < 4 * potential.getM() ? 0.5 : 1;
+		if (method == Method.EULER)
+			return stepEuler();
+		return useAnalytic() ? evaluate(state.speedFactor) : integrate(state.speedFactor);
+	}
+
+	// Advance by a proper time interval with any number of internal steps. Returns
+	// the last turning point passed. All of them go to the listener.
+	public Event advance(double dtau) {
+		if (useAnalytic())
+			return evaluate(dtau);
+		if (method == Method.ADAPTIVE || method == Method.ANALYTIC)
+			return isCaptured() ? Event.NONE : integrate(dtau);
+
+		Event last = Event.NONE;
+		double end = state.tau + dtau;
+		while (!isCaptured() && state.tau < end) {
+			Event event = step();
+			if (event != Event.NONE)
+				last = event;
+		}
+		return last;
+	}
+
+	private Event integrate(double dtau) {
+		Event last = Event.NONE;
+		double remaining = dtau;
+		while (!isCaptured() && remaining > 0) {
+			Event event = integrator.advance(state, remaining);
+			remaining = integrator.remaining;
+			if (event == Event.PERIASTRON && !potential.hasMinimum())
+				event = Event.NONE;
+			if (event != Event.NONE) {
+				last = event;
+				turningPoint(event, integrator.eventTau, integrator.eventR, integrator.eventPhi);
+			}
+		}
+		reducePhi();
+		return last;
+	}
+
+	// The closed-form orbit of the last placement, or null if it is not bound
+	public AnalyticOrbit getAnalyticOrbit() {
+		if (!analyticValid) {
+			analyticValid = true;
+			analytic = AnalyticOrbit.fromTurningPoint(getL(), getM(), startR);
+			if (analytic != null) {
+				startTau = startR == analytic.getApastron() ? 0 : analytic.getRadialPeriod() / 2;
+				startOrbitPhi = analytic.phiOfTau(startTau);
+			}
+		}
+		return analytic;
+	}
+
+	private boolean useAnalytic() {
+		return method == Method.ANALYTIC && getAnalyticOrbit() != null;
+	}
+
+	// Jump to any proper time since the placement in O(1) (analytic method only).
+	// The turning points in between are not reported. Returns false if not
+	// available.
+	public boolean jumpTo(double tau) {
+		if (!useAnalytic())
+			return false;
+		double half = analytic.getRadialPeriod() / 2;
+		double tauN = Math.floor((startTau + tau) / half) * half;
+		if (tauN > startTau) {
+			eventTau = tauN - startTau;
+			eventPhi = startPhi + analytic.phiOfTau(tauN) - startOrbitPhi;
+			eventR = Math.abs(tauN / half % 2) < 0.5 ? analytic.getApastron() : analytic.getPeriastron();
+		} else {
+			eventTau = 0;
+			eventR = startR;
+			eventPhi = startPhi;
+		}
+		setAnalyticState(tau);
+		return true;
+	}
+
+	// Jump to the n-th apastron after the placement, e.g., orbit number 10000
+	public boolean jumpToOrbit(long n) {
+		if (!useAnalytic())
+			return false;
+		double period = analytic.getRadialPeriod();
+		return jumpTo(Math.ceil(startTau / period + n - 1e-9) * period - startTau);
+	}
+
+	// Advance on the closed-form orbit, reporting the turning points passed
+	private Event evaluate(double dtau) {
+		double half = analytic.getRadialPeriod() / 2;
+		double tau = state.tau + dtau;
+		long from = (long) Math.floor((startTau + state.tau) / half);
+		long to = (long) Math.floor((startTau + tau) / half);
+		Event last = Event.NONE;
+		for (long n = from + 1; n <= to; n++) {
+			double tauN = n * half;
+			double phiN = startPhi + analytic.phiOfTau(tauN) - startOrbitPhi - 2 * Math.PI * turns;
+			last = n % 2 == 0 ? Event.APASTRON : Event.PERIASTRON;
+			turningPoint(last, tauN - startTau, last == Event.APASTRON ? analytic.getApastron()
+					: analytic.getPeriastron(), phiN);
+		}
+		setAnalyticState(tau);
+		return last;
+	}
+
+	private void setAnalyticState(double tau) {
+		double phi = analytic.phiOfTau(startTau + tau);
+		state.tau = tau;
+		state.r = analytic.rOfPhi(phi);
+		state.vr = analytic.vrOfPhi(phi);
+		double unwrapped = startPhi + phi - startOrbitPhi;
+		turns = (long) Math.floor((unwrapped + Math.PI) / (2 * Math.PI));
+		state.phi = unwrapped - 2 * Math.PI * turns;
+	}
+
+	// Direction of the apastron at orbit angle zero of the closed-form orbit
+	public double getApastronAngle() {
+		return startPhi - startOrbitPhi;
+	}
+
+	// Deviation of the radius from the closed-form orbit at the current proper
+	// time, the exact reference for the numerical methods. NaN if not bound.
+	public double getReferenceError() {
+		AnalyticOrbit orbit = getAnalyticOrbit();
+		if (orbit == null)
+			return Double.NaN;
+		return state.r - orbit.rOfPhi(orbit.phiOfTau(startTau + state.tau));
+	}
+
+	private Event stepEuler() {
+		double M = potential.getM();
+		double eTot = state.eTot;
+		double r = state.r;
+		double speedFactor = state.speedFactor;
+		Event event = Event.NONE;
+
+		// Calculate velocity from kinetic energy. Avoid zero motion.
+		r += state.direction * speedFactor * Math.max(1e-6 * M, radialSpeed(r));
+		eulerSteps++;
+
+		// Check for extreme points (periastron, apastron)
+		if (potential.eG(r) >= eTot) {
+			// An extreme point is reached. So, turn around and creep down below the total
+			// energy step by step (but with some caution).
+			state.direction *= -1;
+			do {
+				r += state.direction * turnStep;
+				eulerSteps++;
+			} while (potential.eG(r) >= eTot && potential.getRVmax() < r && r <= potential.getRMax());
+
+			if (state.direction < 0)
+				event = Event.APASTRON;
+			else if (potential.hasMinimum())
+				event = Event.PERIASTRON;
+		}
+		state.r = r;
+		state.vr = state.direction * radialSpeed(r);
+		state.tau += speedFactor;
+
+		// Update phi
+		if (r > 2 * M)
+			state.phi += speedFactor * potential.getL() / (r * r);
+		if (event != Event.NONE)
+			turningPoint(event, state.tau, r, state.phi);
+		reducePhi();
+		return event;
+	}
+
+	// Replay a recorded state (see TrajectoryReader) instead of integrating. phi
+	// is unwrapped.
+	public void replay(double tau, double r, double phi, double eTot) {
+		state.eTot = eTot;
+		state.vr = Math.copySign(radialSpeed(r), r - state.r);
+		state.direction = state.vr > 0 ? 1 : -1;
+		state.tau = tau;
+		state.r = r;
+		turns = (long) Math.floor((phi + Math.PI) / (2 * Math.PI));
+		state.phi = phi - 2 * Math.PI * turns;
+	}
+
+	// A recorded turning point
+	public void replayTurningPoint(double tau, double r, double phi) {
+		eventTau = tau;
+		eventR = r;
+		eventPhi = phi;
+	}
+
+	// Speed from kinetic energy: (dr/dtau)^2 = eTot^2 - eG^2
+	private double radialSpeed(double r) {
+		double eG = potential.eG(r);
+		return Math.sqrt(Math.max(0, state.eTot * state.eTot - eG * eG));
+	}
+
+	private void turningPoint(Event event, double tau, double r, double phi) {
+		eventTau = tau;
+		eventR = r;
+		eventPhi = phi;
+		if (listener != null)
+			listener.turningPoint(event, tau, r, phi + 2 * Math.PI * turns);
+	}
+
+	// Basic range reduction, counting the full turns
+	private void reducePhi() {
+		if (state.phi > Math.PI) {
+			long k = (long) Math.floor((state.phi + Math.PI) / (2 * Math.PI));
+			state.phi -= 2 * Math.PI * k;
+			turns += k;
+		}
+	}
+
+	// Statistics: integration steps, rejected steps, error estimates relative to
+	// the tolerance (adaptive method only), the drift of the total energy, and the
+	// deviation from the closed-form orbit (bound orbits only).
+	public long getStepCount() {
+		return method == Method.EULER ? eulerSteps : useAnalytic() ? 0 : integrator.steps;
+	}
+
+	public long getRejectedStepCount() {
+		return method == Method.EULER || useAnalytic() ? 0 : integrator.rejected;
+	}
+
+	public double getErrorEstimate() {
+		return integrator.error;
+	}
+
+	public double getMaxErrorEstimate() {
+		return integrator.maxError;
+	}
+
+	public double getEnergyError() {
+		double eG = potential.eG(state.r);
+		return Math.sqrt(state.vr * state.vr + eG * eG) - state.eTot;
+	}
+
+	public void resetStatistics() {
+		eulerSteps = 0;
+		integrator.resetStatistics();
+	}
+
+	public String getStatistics() {
+		return String.format("%s: %d steps, %d rejected, error %.3g (max %.3g) x tol %.1g, energy error %.3g, r error %.3g",
+				method, getStepCount(), getRejectedStepCount(), getErrorEstimate(), getMaxErrorEstimate(),
+				getTolerance(), getEnergyError(), getReferenceError());
+	}
+
+	// Get and set methods
+	public EffectivePotential getPotential() {
+		return potential;
+	}
+
+	public OrbitState getState() {
+		return state;
+	}
+
+	public double getL() {
+		return potential.getL();
+	}
+
+	public double getM() {
+		return potential.getM();
+	}
+
+	public double getRMax() {
+		return potential.getRMax();
+	}
+
+	public double getR() {
+		return state.r;
+	}
+
+	public double getPhi() {
+		return state.phi;
+	}
+
+	public void setPhi(double phi) {
+		// The closed-form orbit turns along
+		startPhi += phi - state.phi;
+		state.phi = phi;
+		eventPhi = phi;
+	}
+
+	// Phi including all full turns
+	public double getUnwrappedPhi() {
+		return state.phi + 2 * Math.PI * turns;
+	}
+
+	public double getEventTau() {
+		return eventTau;
+	}
+
+	public double getEventR() {
+		return eventR;
+	}
+
+	public double getEventPhi() {
+		return eventPhi;
+	}
+}
@@ -0,0 +1,53 @@
+package orbits.physics;
+
+public final class OrbitState {
+
+	// Elapsed time, radial coordinate and velocity, angular coordinate, total
+	// energy
+	double tau, r, vr, phi, eTot;
+
+	// Radial direction of motion (+1 outward, -1 inward)
+	int direction;
+
+	// Slow-down factor applied to one step (inside the photon sphere)
+	double speedFactor = 1d;
+
+	public void copyFrom(OrbitState s) {
+		tau = s.tau;
+		r = s.r;
+		vr = s.vr;
+		phi = s.phi;
+		eTot = s.eTot;
+		direction = s.direction;
+		speedFactor = s.speedFactor;
+	}
+
+	// Get methods
+	public double getTau() {
+		return tau;
+	}
+
+	public double getR() {
+		return r;
+	}
+
+	public double getVr() {
+		return vr;
+	}
+
+	public double getPhi() {
+		return phi;
+	}
+
+	public double getETot() {
+		return eTot;
+	}
+
+	public int getDirection() {
+		return direction;
+	}
+
+	public double getSpeedFactor() {
+		return speedFactor;
+	}
+}
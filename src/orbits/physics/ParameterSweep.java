@@ -0,0 +1,169 @@
+package orbits.physics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs a grid of orbits over angular momentum, mass and start radius in
+// parallel. Every grid point has its own engine, so the tasks share nothing
+// but the result array and scale with the number of cores.
+public final class ParameterSweep {
+
+	// Grid points per leaf task
+	private static final int GRAIN = 4;
+
+	// An escaping particle is followed up to this multiple of the plot range
+	private static final double ESCAPE_FACTOR = 20;
+
+	private final double[] lValues, mValues, rValues;
+	private int orbits = 10;
+	private double tolerance = AdaptiveIntegrator.TOLERANCE_DEF;
+	private double maxTau = 1e7;
+
+	public ParameterSweep(double[] lValues, double[] mValues, double[] rValues) {
+		this.lValues = lValues.clone();
+		this.mValues = mValues.clone();
+		this.rValues = rValues.clone();
+	}
+
+	// n equidistant values from min to max (inclusive)
+	public static double[] range(double min, double max, int n) {
+		double[] values = new double[Math.max(1, n)];
+		for (int i = 0; i < values.length; i++)
+			values[i] = values.length == 1 ? min : min + (max - min) * i / (values.length - 1);
+		return values;
+	}
+
+	// Number of radial periods measured for bound orbits
+	public void setOrbits(int orbits) {
+		this.orbits = Math.max(1, orbits);
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	// Upper limit of proper time per grid point
+	public void setMaxTau(double maxTau) {
+		this.maxTau = maxTau;
+	}
+
+	public int size() {
+		return lValues.length * mValues.length * rValues.length;
+	}
+
+	// Run on all cores. The results are in grid order: r varies fastest, then M,
+	// then L.
+	public SweepResult[] run() {
+		return run(Runtime.getRuntime().availableProcessors());
+	}
+
+	public SweepResult[] run(int parallelism) {
+		SweepResult[] results = new SweepResult[size()];
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new SweepTask(results, 0, results.length));
+		} finally {
+			pool.shutdown();
+		}
+		return results;
+	}
+
+	private final class SweepTask extends RecursiveAction {
+		private final SweepResult[] results;
+		private final int from, to;
+
+		SweepTask(SweepResult[] results, int from, int to) {
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				for (int i = from; i < to; i++) {
+					int ir = i % rValues.length;
+					int im = i / rValues.length % mValues.length;
+					int il = i / rValues.length / mValues.length;
+					results[i] = computePoint(lValues[il], mValues[im], rValues[ir], orbits, tolerance, maxTau);
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SweepTask(results, from, mid), new SweepTask(results, mid, to));
+			}
+		}
+	}
+
+	// Release a particle at rest at r0 and follow it until it is captured, escapes
+	// or has completed the requested number of radial periods.
+	public static SweepResult computePoint(double L, double M, double r0, int orbits, double tolerance, double maxTau) {
+		OrbitEngine engine = new OrbitEngine(L, M);
+		engine.setTolerance(tolerance);
+		EffectivePotential potential = engine.getPotential();
+		if (r0 <= 2 * M)
+			return new SweepResult(L, M, r0, SweepResult.Outcome.PLUNGE, Double.NaN, Double.NaN, r0, r0, 0);
+
+		SweepResult.Outcome outcome = outcome(engine, r0, engine.putParticle(r0));
+
+		// Follow the periastrons
+		PeriastronCounter counter = new PeriastronCounter(r0);
+		engine.setTurningPointListener(counter);
+		double rEscape = ESCAPE_FACTOR * Math.max(r0, potential.getRMax());
+		// Chunks of about a Keplerian period divided by 2 pi
+		double chunk = Math.max(1, Math.sqrt(r0 * r0 * r0 / M));
+		while (engine.getState().getTau() < maxTau) {
+			engine.advance(chunk);
+			if (engine.isCaptured()) {
+				counter.rMin = 2 * M;
+				break;
+			}
+			if (outcome == SweepResult.Outcome.SCATTER && engine.getR() > rEscape)
+				break;
+			if (outcome == SweepResult.Outcome.BOUND && counter.count > orbits)
+				break;
+		}
+
+		// Averages over the measured periods
+		double period = Double.NaN, advance = Double.NaN;
+		if (outcome == SweepResult.Outcome.BOUND && counter.count > 1) {
+			int n = counter.count - 1;
+			period = (counter.lastTau - counter.firstTau) / n;
+			advance = (counter.lastPhi - counter.firstPhi) / n - 2 * Math.PI;
+		}
+		double rMax = outcome == SweepResult.Outcome.SCATTER ? Double.POSITIVE_INFINITY : counter.rMax;
+		return new SweepResult(L, M, r0, outcome, period, advance, counter.rMin, rMax, engine.getStepCount());
+	}
+
+	// The potential already tells the outcome of a particle just put at r0:
+	// inside its maximum, above it, or without any extreme points the particle
+	// falls. Otherwise it is bound below the rest energy and escapes above.
+	static SweepResult.Outcome outcome(OrbitEngine engine, double r0, boolean nonPeriodic) {
+		if (nonPeriodic || r0 <= engine.getPotential().getRVmax())
+			return SweepResult.Outcome.PLUNGE;
+		return engine.getState().getETot() < 1 ? SweepResult.Outcome.BOUND : SweepResult.Outcome.SCATTER;
+	}
+
+	// Collects the turning points of one orbit
+	private static final class PeriastronCounter implements TurningPointListener {
+		int count;
+		double firstTau, firstPhi, lastTau, lastPhi, rMin, rMax;
+
+		PeriastronCounter(double r0) {
+			rMin = rMax = r0;
+		}
+
+		@Override
+		public void turningPoint(OrbitEngine.Event event, double tau, double r, double phi) {
+			rMin = Math.min(rMin, r);
+			rMax = Math.max(rMax, r);
+			if (event != OrbitEngine.Event.PERIASTRON)
+				return;
+			if (count++ == 0) {
+				firstTau = tau;
+				firstPhi = phi;
+			}
+			lastTau = tau;
+			lastPhi = phi;
+		}
+	}
+}
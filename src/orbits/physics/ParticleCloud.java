@@ -0,0 +1,284 @@
+package orbits.physics;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Many test particles around one black hole, in structure-of-arrays form:
+// r, phi, radial velocity, angular momentum and energy per particle. The
+// particles move on geodesics with
+//   d2r/dtau2 = -M/r^2 + L^2/r^3 - 3 M L^2/r^4,  dphi/dtau = L/r^2,
+// integrated by leapfrog (kick-drift-kick) with substeps that get shorter
+// near the black hole. The arrays are stepped and projected in parallel
+// chunks.
+public final class ParticleCloud {
+
+	// What a particle does, known at its release
+	public static final byte BOUND = 0, PLUNGING = 1, UNBOUND = 2;
+
+	// Where it is
+	public static final byte ACTIVE = 0, CAPTURED = 1, ESCAPED = 2;
+
+	private static final int GRAIN = 8192;
+
+	// Sine table for projecting, linearly interpolated (far below a pixel)
+	private static final int SINES = 4096;
+	private static final double[] SINE = new double[SINES + 1];
+
+	static {
+		for (int i = 0; i <= SINES; i++)
+			SINE[i] = Math.sin(2 * Math.PI * i / SINES);
+	}
+
+	// Substep relative to the local Keplerian time scale, so the cost of a
+	// particle grows with dtau
+	private static final double STEP_FACTOR = 0.05;
+
+	private final double M, rEscape;
+	private int size;
+	private double[] r = new double[0], phi = r, vr = r, L = r, e = r;
+	private byte[] kind = new byte[0], status = kind;
+	private final AtomicInteger captured = new AtomicInteger(), escaped = new AtomicInteger();
+	private final AtomicLong substeps = new AtomicLong();
+	private final int[] kinds = new int[3];
+	private double tau;
+
+	// Particles beyond rEscape are not followed any further
+	public ParticleCloud(double M, double rEscape) {
+		this.M = M;
+		this.rEscape = rEscape;
+	}
+
+	// Release n particles at rest at random radii and angles, with random
+	// angular momenta. Replaces the previous particles.
+	public void release(int n, double rMin, double rMax, double lMin, double lMax, long seed) {
+		if (r.length != n) {
+			r = new double[n];
+			phi = new double[n];
+			vr = new double[n];
+			L = new double[n];
+			e = new double[n];
+			kind = new byte[n];
+			status = new byte[n];
+		}
+		size = n;
+		tau = 0;
+		captured.set(0);
+		escaped.set(0);
+		Arrays.fill(kinds, 0);
+		rMin = Math.max(rMin, 2 * M * (1 + 1e-9));
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int i = 0; i < n; i++) {
+			r[i] = rMin + (rMax - rMin) * random.nextDouble();
+			L[i] = lMin + (lMax - lMin) * random.nextDouble();
+			phi[i] = 2 * Math.PI * random.nextDouble();
+			vr[i] = 0;
+			status[i] = ACTIVE;
+		}
+		PotentialKernels.eG(M, r, L, e, n);
+		for (int i = 0; i < n; i++) {
+			kind[i] = kindOf(r[i], L[i], e[i]);
+			kinds[kind[i]]++;
+		}
+	}
+
+	private double potential(double r, double l) {
+		return Math.sqrt((1 - 2 * M / r) * (1 + l * l / (r * r)));
+	}
+
+	// As in EffectivePotential: at rest beyond the maximum of the potential and
+	// below it, a particle is bound if its energy is below 1
+	private byte kindOf(double r, double l, double energy) {
+		double disc = l * l - 12 * M * M;
+		if (disc < 0)
+			return PLUNGING;
+		double rVmax = l * (l - Math.sqrt(disc)) / 2 / M;
+		if (r <= rVmax || energy > potential(rVmax, l))
+			return PLUNGING;
+		return energy < 1 ? BOUND : UNBOUND;
+	}
+
+	// Advance all particles by a proper time interval. Returns the substeps
+	// taken, a measure of the work.
+	public long advance(double dtau) {
+		if (size == 0 || dtau <= 0)
+			return 0;
+		substeps.set(0);
+		ForkJoinPool.commonPool().invoke(new Chunk(0, size, dtau, null));
+		tau += dtau;
+		return substeps.get();
+	}
+
+	private void advance(int from, int to, double dtau) {
+		int nCaptured = 0, nEscaped = 0;
+		long nSubsteps = 0;
+		for (int i = from; i < to; i++) {
+			if (status[i] != ACTIVE)
+				continue;
+			double ri = r[i], v = vr[i], p = phi[i], l = L[i], l2 = l * l;
+			int n = (int) Math.ceil(dtau / (STEP_FACTOR * ri * Math.sqrt(ri / M)));
+			double h = dtau / n;
+			nSubsteps += n;
+			for (int k = 0; k < n; k++) {
+				v += 0.5 * h * acceleration(ri, l2);
+				ri += h * v;
+				if (ri <= 2 * M)
+					break;
+				p += h * l / (ri * ri);
+				v += 0.5 * h * acceleration(ri, l2);
+			}
+			r[i] = ri;
+			vr[i] = v;
+			phi[i] = p;
+			if (ri <= 2 * M) {
+				status[i] = CAPTURED;
+				nCaptured++;
+			} else if (ri > rEscape) {
+				status[i] = ESCAPED;
+				nEscaped++;
+			}
+		}
+		if (nCaptured > 0)
+			captured.addAndGet(nCaptured);
+		if (nEscaped > 0)
+			escaped.addAndGet(nEscaped);
+		substeps.addAndGet(nSubsteps);
+	}
+
+	private double acceleration(double r, double l2) {
+		double u = 1 / r, u2 = u * u;
+		return u2 * (-M + l2 * u * (1 - 3 * M * u));
+	}
+
+	// Set the pixels of the active particles in an ARGB raster, with a color per
+	// kind. The origin is at (x0, y0), and scale is pixels per unit of r.
+	public void project(int[] pixels, int width, int height, double x0, double y0, double scale, int[] colors) {
+		if (size > 0)
+			ForkJoinPool.commonPool().invoke(new Chunk(0, size, 0, new Raster(pixels, width, height, x0, y0, scale,
+					colors)));
+	}
+
+	private static final class Raster {
+		final int[] pixels, colors;
+		final int width, height;
+		final double x0, y0, scale;
+
+		Raster(int[] pixels, int width, int height, double x0, double y0, double scale, int[] colors) {
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.scale = scale;
+			this.colors = colors;
+		}
+	}
+
+	private void project(int from, int to, Raster raster) {
+		int w = raster.width, h = raster.height;
+		for (int i = from; i < to; i++) {
+			if (status[i] != ACTIVE)
+				continue;
+			double s = r[i] * raster.scale;
+			double t = phi[i] * (SINES / (2 * Math.PI));
+			double k = Math.floor(t);
+			double f = t - k;
+			int j = (int) ((long) k & (SINES - 1));
+			int jc = (j + SINES / 4) & (SINES - 1);
+			double sin = SINE[j] + f * (SINE[j + 1] - SINE[j]);
+			double cos = SINE[jc] + f * (SINE[jc + 1] - SINE[jc]);
+			int x = (int) (raster.x0 + s * cos);
+			int y = (int) (raster.y0 + s * sin);
+			if (x >= 0 && x < w && y >= 0 && y < h)
+				raster.pixels[y * w + x] = raster.colors[kind[i]];
+		}
+	}
+
+	// Steps or projects a range of particles
+	private final class Chunk extends RecursiveAction {
+		private final int from, to;
+		private final double dtau;
+		private final Raster raster;
+
+		Chunk(int from, int to, double dtau, Raster raster) {
+			this.from = from;
+			this.to = to;
+			this.dtau = dtau;
+			this.raster = raster;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				if (raster == null)
+					advance(from, to, dtau);
+				else
+					project(from, to, raster);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Chunk(from, mid, dtau, raster), new Chunk(mid, to, dtau, raster));
+			}
+		}
+	}
+
+	// Get methods
+	public int size() {
+		return size;
+	}
+
+	public double getM() {
+		return M;
+	}
+
+	public double getTau() {
+		return tau;
+	}
+
+	// Particles released as BOUND, PLUNGING or UNBOUND
+	public int getCount(byte kind) {
+		return kinds[kind];
+	}
+
+	public int getCaptured() {
+		return captured.get();
+	}
+
+	public int getEscaped() {
+		return escaped.get();
+	}
+
+	public int getActive() {
+		return size - getCaptured() - getEscaped();
+	}
+
+	public double getR(int i) {
+		return r[i];
+	}
+
+	public double getPhi(int i) {
+		return phi[i];
+	}
+
+	public double getVr(int i) {
+		return vr[i];
+	}
+
+	public double getL(int i) {
+		return L[i];
+	}
+
+	public double getEnergy(int i) {
+		return e[i];
+	}
+
+	public byte getKind(int i) {
+		return kind[i];
+	}
+
+	public byte getStatus(int i) {
+		return status[i];
+	}
+}
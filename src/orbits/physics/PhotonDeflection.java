@@ -0,0 +1,139 @@
+package orbits.physics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Light bending by the black hole. A photon coming in from far away with impact
+// parameter b follows the null geodesic
+//   u'' = 3 M u^2 - u,  u = 1/r, ' = d/dphi, u = 0 and u' = 1/b at the start.
+// Below the critical impact parameter 3 sqrt(3) M it falls into the black hole
+// (the shadow). Otherwise it leaves again, turned by pi plus the deflection
+// angle. Close to the critical value, it winds around the photon sphere first
+// (the photon ring). The deflection is traced by RK4 in phi for a uniform grid
+// of impact parameters and interpolated in between. Tables are cached per mass
+// and grid.
+public final class PhotonDeflection {
+
+	// Steps per radian, and windings after which a photon counts as captured
+	private static final int STEPS_PER_RADIAN = 200;
+	private static final double PHI_MAX = 8 * Math.PI;
+	private static final int GRAIN = 64;
+	private static final int CAPACITY = 16;
+
+	private final double M, bMax, h;
+	private final double[] alpha;
+
+	private static final Map<String, PhotonDeflection> tables = Collections
+			.synchronizedMap(new LinkedHashMap<String, PhotonDeflection>(CAPACITY, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, PhotonDeflection> eldest) {
+					return size() > CAPACITY;
+				}
+			});
+
+	// Table of n impact parameters from 0 to bMax, shared
+	public static PhotonDeflection of(double M, double bMax, int n) {
+		String key = M + ":" + bMax + ":" + n;
+		PhotonDeflection table = tables.get(key);
+		if (table == null) {
+			table = new PhotonDeflection(M, bMax, n);
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	public PhotonDeflection(double M, double bMax, int n) {
+		if (M <= 0 || bMax <= 0 || n < 2)
+			throw new IllegalArgumentException(
+					"Invalid deflection table: M = " + M + ", bMax = " + bMax + ", n = " + n);
+		this.M = M;
+		this.bMax = bMax;
+		h = bMax / (n - 1);
+		alpha = new double[n];
+		// The traces near the photon ring are long, so split the table
+		ForkJoinPool.commonPool().invoke(new Trace(0, n));
+	}
+
+	private final class Trace extends RecursiveAction {
+		private final int from, to;
+
+		Trace(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				for (int i = from; i < to; i++)
+					alpha[i] = deflection(M, i * h);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Trace(from, mid), new Trace(mid, to));
+			}
+		}
+	}
+
+	public static double criticalImpact(double M) {
+		return 3 * Math.sqrt(3) * M;
+	}
+
+	// Deflection angle of one photon, NaN if it is captured
+	public static double deflection(double M, double b) {
+		if (b <= criticalImpact(M))
+			return Double.NaN;
+		double dphi = 1.0 / STEPS_PER_RADIAN;
+		double uH = 1 / (2 * M);
+		double u = 0, v = 1 / b, phi = 0;
+		while (phi < PHI_MAX) {
+			// RK4 for u' = v, v' = 3 M u^2 - u
+			double k1u = v, k1v = 3 * M * u * u - u;
+			double u2 = u + 0.5 * dphi * k1u, k2u = v + 0.5 * dphi * k1v, k2v = 3 * M * u2 * u2 - u2;
+			double u3 = u + 0.5 * dphi * k2u, k3u = v + 0.5 * dphi * k2v, k3v = 3 * M * u3 * u3 - u3;
+			double u4 = u + dphi * k3u, k4u = v + dphi * k3v, k4v = 3 * M * u4 * u4 - u4;
+			double uNext = u + dphi / 6 * (k1u + 2 * k2u + 2 * k3u + k4u);
+			double vNext = v + dphi / 6 * (k1v + 2 * k2v + 2 * k3v + k4v);
+			if (uNext <= 0) {
+				// Back at infinity, with the last bit linearly
+				return phi + dphi * u / (u - uNext) - Math.PI;
+			}
+			if (uNext >= uH)
+				return Double.NaN;
+			u = uNext;
+			v = vNext;
+			phi += dphi;
+		}
+		return Double.NaN;
+	}
+
+	// Interpolated deflection, NaN in the shadow. Beyond the table, it falls off
+	// like 1/b as in the weak field.
+	public double getDeflection(double b) {
+		double t = b / h;
+		int i = (int) t;
+		if (i >= alpha.length - 1)
+			return alpha[alpha.length - 1] * bMax / b;
+		double a0 = alpha[i], a1 = alpha[i + 1];
+		if (Double.isNaN(a1))
+			return Double.NaN;
+		if (Double.isNaN(a0))
+			return b > criticalImpact(M) ? a1 : Double.NaN;
+		return a0 + (t - i) * (a1 - a0);
+	}
+
+	// Get methods
+	public double getM() {
+		return M;
+	}
+
+	public double getBMax() {
+		return bMax;
+	}
+
+	public int size() {
+		return alpha.length;
+	}
+}
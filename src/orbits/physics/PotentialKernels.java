@@ -0,0 +1,92 @@
+package orbits.physics;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.oliverfritz.util.MoreUtil;
+
+// Bulk evaluation of the effective potential and of the Schwarzschild
+// embedding, e.g. one value per plot column or per particle. With the Vector
+// API (run with --add-modules jdk.incubator.vector) whole lanes of radii are
+// evaluated at once. Without it, after setVectorized(false), or with
+// -Dorbits.vector=false, plain loops are used.
+public final class PotentialKernels {
+	private static final Logger LOGGER = MoreUtil.getLogger(PotentialKernels.class);
+
+	// Implemented by VectorPotential in src-vector, which needs the incubator
+	// module to compile and to load
+	interface Kernel {
+		void eG(double L, double M, double[] r, double[] e, int n);
+
+		void eG(double M, double[] r, double[] L, double[] e, int n);
+
+		void yS(double M, double scale, double[] r, double[] y, int n);
+	}
+
+	private static final Kernel VECTOR = load();
+	private static volatile boolean vectorized = VECTOR != null
+			&& !"false".equalsIgnoreCase(System.getProperty("orbits.vector"));
+
+	private PotentialKernels() {
+	}
+
+	private static Kernel load() {
+		try {
+			return (Kernel) Class.forName("orbits.physics.VectorPotential").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Expected without the module
+			LOGGER.log(Level.FINE, e.getMessage(), e);
+			return null;
+		}
+	}
+
+	// Runtime switch, only effective with the Vector API available
+	public static void setVectorized(boolean vectorized) {
+		PotentialKernels.vectorized = vectorized && VECTOR != null;
+	}
+
+	public static boolean isVectorized() {
+		return vectorized;
+	}
+
+	public static boolean isVectorAvailable() {
+		return VECTOR != null;
+	}
+
+	// The potential sqrt((1 - 2M/r)(1 + (L/r)^2)) of the first n radii
+	public static void eG(double L, double M, double[] r, double[] e, int n) {
+		if (vectorized) {
+			VECTOR.eG(L, M, r, e, n);
+			return;
+		}
+		for (int i = 0; i < n; i++)
+			e[i] = eG(L, M, r[i]);
+	}
+
+	// The same with an angular momentum per radius (particles)
+	public static void eG(double M, double[] r, double[] L, double[] e, int n) {
+		if (vectorized) {
+			VECTOR.eG(M, r, L, e, n);
+			return;
+		}
+		for (int i = 0; i < n; i++)
+			e[i] = eG(L[i], M, r[i]);
+	}
+
+	// Height scale * sqrt(r - 2M) of the Schwarzschild paraboloid
+	public static void yS(double M, double scale, double[] r, double[] y, int n) {
+		if (vectorized) {
+			VECTOR.yS(M, scale, r, y, n);
+			return;
+		}
+		for (int i = 0; i < n; i++)
+			y[i] = scale * Math.sqrt(r[i] - 2 * M);
+	}
+
+	// Scalar form as in the vector lanes, also for their remainders
+	static double eG(double L, double M, double r) {
+		double u = 1 / r;
+		double lu = L * u;
+		return Math.sqrt((1 - 2 * M * u) * (1 + lu * lu));
+	}
+}
@@ -0,0 +1,77 @@
+package orbits.physics;
+
+import java.util.Locale;
+
+public final class SweepResult {
+
+	// Fate of a particle released at rest
+	public static enum Outcome {
+		BOUND, PLUNGE, SCATTER
+	}
+
+	public static final String CSV_HEADER = "L,M,r0,outcome,radialPeriod,periastronAdvance,rMin,rMax,steps";
+
+	private final double L, M, r0;
+	private final Outcome outcome;
+	private final double radialPeriod, periastronAdvance, rMin, rMax;
+	private final long steps;
+
+	SweepResult(double L, double M, double r0, Outcome outcome, double radialPeriod, double periastronAdvance,
+			double rMin, double rMax, long steps) {
+		this.L = L;
+		this.M = M;
+		this.r0 = r0;
+		this.outcome = outcome;
+		this.radialPeriod = radialPeriod;
+		this.periastronAdvance = periastronAdvance;
+		this.rMin = rMin;
+		this.rMax = rMax;
+		this.steps = steps;
+	}
+
+	// Get methods
+	public double getL() {
+		return L;
+	}
+
+	public double getM() {
+		return M;
+	}
+
+	public double getR0() {
+		return r0;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	// Proper time from periastron to periastron (NaN if not bound)
+	public double getRadialPeriod() {
+		return radialPeriod;
+	}
+
+	// Advance of the periastron per orbit in radians (NaN if not bound)
+	public double getPeriastronAdvance() {
+		return periastronAdvance;
+	}
+
+	public double getRMin() {
+		return rMin;
+	}
+
+	public double getRMax() {
+		return rMax;
+	}
+
+	// Integration steps spent on this point
+	public long getSteps() {
+		return steps;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%g,%g,%g,%s,%g,%g,%g,%g,%d", L, M, r0, outcome, radialPeriod,
+				periastronAdvance, rMin, rMax, steps);
+	}
+}
@@ -0,0 +1,129 @@
+package orbits.physics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Effective potential interpolated from a table of values and derivatives
+// (cubic Hermite) on a uniform grid. The grid is refined until the deviation
+// from the exact potential, sampled inside every cell, is below the
+// tolerance. Close to the horizon, where the potential behaves like a square
+// root, and beyond rMax the exact potential is used.
+public class TabulatedPotential extends EffectivePotential {
+
+	public static final double TOLERANCE_DEF = 1e-10;
+
+	private static final int CELLS_MIN = 256;
+	private static final int CELLS_MAX = 1 << 20;
+	private static final int SAMPLES = 4;
+	private static final double SAFETY = 2;
+	private static final int CAPACITY = 16;
+
+	private final double tolerance;
+	private final double rLow, rHigh;
+	private double h, invH;
+	private int cells;
+
+	// Values and derivatives (with respect to the cell coordinate) per node
+	private double[] v, d;
+
+	// Maximum sampled deviation from the exact potential, with a safety factor for
+	// the points in between
+	private double errorBound;
+
+	// Tables are built once per parameter set and shared
+	private static final Map<String, TabulatedPotential> tables = Collections
+			.synchronizedMap(new LinkedHashMap<String, TabulatedPotential>(CAPACITY, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, TabulatedPotential> eldest) {
+					return size() > CAPACITY;
+				}
+			});
+
+	public static TabulatedPotential of(double L, double M) {
+		String key = L + ":" + M;
+		TabulatedPotential table = tables.get(key);
+		if (table == null) {
+			table = new TabulatedPotential(L, M, TOLERANCE_DEF);
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	public TabulatedPotential(double L, double M, double tolerance) {
+		super(L, M);
+		this.tolerance = tolerance;
+		rLow = 2.25 * M;
+		rHigh = getRMax();
+		cells = CELLS_MIN;
+		build();
+		while (errorBound > tolerance && cells < CELLS_MAX) {
+			cells *= 2;
+			build();
+		}
+	}
+
+	private void build() {
+		h = (rHigh - rLow) / cells;
+		invH = 1 / h;
+		v = new double[cells + 1];
+		d = new double[cells + 1];
+		for (int i = 0; i <= cells; i++) {
+			double r = rLow + i * h;
+			v[i] = super.eG(r);
+			d[i] = super.dG(r) * h;
+		}
+
+		errorBound = 0;
+		for (int i = 0; i < cells; i++)
+			for (int k = 1; k <= SAMPLES; k++) {
+				double r = rLow + (i + (double) k / (SAMPLES + 1)) * h;
+				errorBound = Math.max(errorBound, Math.abs(eG(r) - super.eG(r)));
+			}
+		// Just below rHigh, where t may round up to cells
+		double r = Math.nextDown(rHigh);
+		errorBound = Math.max(errorBound, Math.abs(eG(r) - super.eG(r)));
+		errorBound *= SAFETY;
+	}
+
+	@Override
+	public double eG(double r) {
+		if (!(r >= rLow && r < rHigh))
+			return super.eG(r);
+		double t = (r - rLow) * invH;
+		// t may round up to cells just below rHigh
+		int i = Math.min((int) t, cells - 1);
+		double s = t - i;
+		double v0 = v[i], v1 = v[i + 1], d0 = d[i], d1 = d[i + 1];
+		// Hermite polynomial in Horner form
+		double c2 = 3 * (v1 - v0) - 2 * d0 - d1;
+		double c3 = 2 * (v0 - v1) + d0 + d1;
+		return v0 + s * (d0 + s * (c2 + s * c3));
+	}
+
+	@Override
+	public double dG(double r) {
+		if (!(r >= rLow && r < rHigh))
+			return super.dG(r);
+		double t = (r - rLow) * invH;
+		int i = Math.min((int) t, cells - 1);
+		double s = t - i;
+		double v0 = v[i], v1 = v[i + 1], d0 = d[i], d1 = d[i + 1];
+		double c2 = 3 * (v1 - v0) - 2 * d0 - d1;
+		double c3 = 2 * (v0 - v1) + d0 + d1;
+		return (d0 + s * (2 * c2 + s * 3 * c3)) * invH;
+	}
+
+	// Get methods
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public double getErrorBound() {
+		return errorBound;
+	}
+
+	public int getCells() {
+		return cells;
+	}
+}
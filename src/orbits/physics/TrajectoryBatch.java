@@ -0,0 +1,204 @@
+package orbits.physics;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs a list of orbit configurations on a worker pool and writes the sampled
+// trajectories into one binary file through memory mapping. The layout is
+// fixed before the run, so every orbit writes into its own slot without any
+// coordination. All values are little-endian:
+//   header: int MAGIC, int VERSION, int orbits, int 0
+//   index, one entry of ENTRY_BYTES per orbit: double L, M, r0, interval,
+//     long slot offset, int capacity, int samples, int outcome, int 0,
+//     long steps
+//   slots: capacity samples of float r, float phi (range-reduced)
+// Sample i is at proper time i * interval. Orbits that are captured early
+// leave the rest of their slot unwritten (sparse on most file systems). The
+// outcome is the ordinal of SweepResult.Outcome.
+public final class TrajectoryBatch {
+
+	public static final int MAGIC = 0x4F524254; // "ORBT"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 16;
+	public static final int ENTRY_BYTES = 64;
+	public static final int SAMPLE_BYTES = 8;
+
+	// Slots are mapped in windows of about this size, so that even large batches
+	// need only a few mappings
+	private static final long WINDOW = 1L << 28;
+
+	private final List<OrbitConfiguration> configurations;
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicLong samples = new AtomicLong();
+
+	public TrajectoryBatch(List<OrbitConfiguration> configurations) {
+		this.configurations = new ArrayList<>(configurations);
+		for (OrbitConfiguration c : this.configurations)
+			if ((long) c.getSamples() * SAMPLE_BYTES > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Too many samples: " + c);
+	}
+
+	public int size() {
+		return configurations.size();
+	}
+
+	// Progress, also while running
+	public int getCompleted() {
+		return completed.get();
+	}
+
+	public long getSamples() {
+		return samples.get();
+	}
+
+	// Run on all cores. Returns the file size.
+	public long run(Path file) throws IOException {
+		return run(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	public long run(Path file, int parallelism) throws IOException {
+		int n = configurations.size();
+		completed.set(0);
+		samples.set(0);
+
+		// Slot offsets, 8-byte aligned after the index
+		long[] offsets = new long[n];
+		long end = align((long) HEADER_BYTES + (long) ENTRY_BYTES * n);
+		for (int i = 0; i < n; i++) {
+			offsets[i] = end;
+			end = align(end + (long) configurations.get(i).getSamples() * SAMPLE_BYTES);
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer index = map(channel, 0, offsets.length > 0 ? offsets[0] : end);
+			index.putInt(0, MAGIC);
+			index.putInt(4, VERSION);
+			index.putInt(8, n);
+			index.putInt(12, 0);
+
+			// Consecutive slots share a window. A larger slot has its own.
+			MappedByteBuffer[] windows = new MappedByteBuffer[n];
+			long[] bases = new long[n];
+			for (int i = 0; i < n;) {
+				int j = i + 1;
+				while (j < n && slotEnd(offsets, j) - offsets[i] <= WINDOW)
+					j++;
+				MappedByteBuffer window = map(channel, offsets[i], slotEnd(offsets, j - 1) - offsets[i]);
+				for (int k = i; k < j; k++) {
+					windows[k] = window;
+					bases[k] = offsets[i];
+				}
+				i = j;
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+			try {
+				pool.invoke(new BatchTask(index, windows, bases, offsets, 0, n));
+			} finally {
+				pool.shutdown();
+			}
+
+			index.force();
+			MappedByteBuffer last = null;
+			for (MappedByteBuffer window : windows)
+				if (window != last) {
+					window.force();
+					last = window;
+				}
+		}
+		return end;
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	private long slotEnd(long[] offsets, int i) {
+		return offsets[i] + (long) configurations.get(i).getSamples() * SAMPLE_BYTES;
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private final class BatchTask extends RecursiveAction {
+		private final MappedByteBuffer index;
+		private final MappedByteBuffer[] windows;
+		private final long[] bases, offsets;
+		private final int from, to;
+
+		BatchTask(MappedByteBuffer index, MappedByteBuffer[] windows, long[] bases, long[] offsets, int from, int to) {
+			this.index = index;
+			this.windows = windows;
+			this.bases = bases;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				for (int i = from; i < to; i++)
+					runOrbit(i, index, windows[i], (int) (offsets[i] - bases[i]), offsets[i]);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BatchTask(index, windows, bases, offsets, from, mid),
+						new BatchTask(index, windows, bases, offsets, mid, to));
+			}
+		}
+	}
+
+	// Absolute puts only, so the threads can share the buffers
+	private void runOrbit(int i, MappedByteBuffer index, MappedByteBuffer window, int slot, long offset) {
+		OrbitConfiguration c = configurations.get(i);
+		int capacity = c.getSamples();
+		OrbitEngine engine = new OrbitEngine(c.getL(), c.getM());
+		engine.setMethod(c.getMethod());
+		engine.setTolerance(c.getTolerance());
+
+		int n = 0;
+		SweepResult.Outcome outcome = SweepResult.Outcome.PLUNGE;
+		if (c.getR0() > 2 * c.getM()) {
+			outcome = ParameterSweep.outcome(engine, c.getR0(), engine.putParticle(c.getR0()));
+			while (true) {
+				window.putFloat(slot + n * SAMPLE_BYTES, (float) engine.getR());
+				window.putFloat(slot + n * SAMPLE_BYTES + 4, (float) engine.getPhi());
+				if (++n >= capacity || engine.isCaptured())
+					break;
+				engine.advance(c.getInterval());
+			}
+		} else {
+			window.putFloat(slot, (float) c.getR0());
+			window.putFloat(slot + 4, 0);
+			n = 1;
+		}
+
+		int e = HEADER_BYTES + i * ENTRY_BYTES;
+		index.putDouble(e, c.getL());
+		index.putDouble(e + 8, c.getM());
+		index.putDouble(e + 16, c.getR0());
+		index.putDouble(e + 24, c.getInterval());
+		index.putLong(e + 32, offset);
+		index.putInt(e + 40, capacity);
+		index.putInt(e + 44, n);
+		index.putInt(e + 48, outcome.ordinal());
+		index.putInt(e + 52, 0);
+		index.putLong(e + 56, engine.getStepCount());
+		samples.addAndGet(n);
+		completed.incrementAndGet();
+	}
+}
@@ -0,0 +1,260 @@
+package orbits.physics;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Publishes the trajectory of an engine as batches of samples. The producer
+// (the thread stepping the engine) never waits: every subscriber has a queue
+// of bufferSize batches, and while it is full, the batch being built is
+// thinned out and the subscriber's decimation doubles. When the subscriber
+// catches up, the decimation halves again. Turning points and placements are
+// never dropped, so a batch of only those is queued beyond bufferSize.
+// Signals to a subscriber are serialized on the executor.
+public final class TrajectoryPublisher implements Flow.Publisher<TrajectorySamples>, AutoCloseable {
+
+	public static final int SAMPLING_DEF = 1;
+	public static final int BATCH_SIZE_DEF = 256;
+	public static final int BUFFER_SIZE_DEF = 16;
+	private static final int DECIMATION_MAX = 1 << 16;
+
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	private volatile int sampling = SAMPLING_DEF, batchSize = BATCH_SIZE_DEF, bufferSize = BUFFER_SIZE_DEF;
+	private volatile boolean closed;
+	private long steps;
+
+	// Delivery on daemon threads, which die when idle
+	public TrajectoryPublisher() {
+		ownExecutor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "Orbits publisher");
+			t.setDaemon(true);
+			return t;
+		});
+		executor = ownExecutor;
+	}
+
+	public TrajectoryPublisher(Executor executor) {
+		this.executor = executor;
+		ownExecutor = null;
+	}
+
+	// Publish every n-th step (turning points and placements always)
+	public void setSampling(int steps) {
+		sampling = Math.max(1, steps);
+	}
+
+	public int getSampling() {
+		return sampling;
+	}
+
+	// Samples per batch, for new subscribers
+	public void setBatchSize(int samples) {
+		batchSize = Math.max(1, samples);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	// Batches queued per subscriber before decimation starts
+	public void setBufferSize(int batches) {
+		bufferSize = Math.max(1, batches);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super TrajectorySamples> subscriber) {
+		Subscription s = new Subscription(subscriber, batchSize);
+		if (closed) {
+			s.complete();
+		} else {
+			subscriptions.add(s);
+			s.signal();
+		}
+	}
+
+	// Called by the producer after each step or placement
+	public void offer(OrbitEngine engine, OrbitEngine.Event event, boolean placement) {
+		if (subscriptions.isEmpty() || closed)
+			return;
+		boolean keep = event != OrbitEngine.Event.NONE || placement;
+		if (++steps % sampling != 0 && !keep)
+			return;
+		double tau = engine.getState().getTau();
+		double r = engine.getR();
+		double phi = engine.getUnwrappedPhi();
+		byte flags = TrajectorySamples.flags(event, placement);
+		for (Subscription s : subscriptions)
+			s.add(tau, r, phi, engine.getEventR(), engine.getEventPhi(), flags, keep);
+	}
+
+	// Publish the partial batches
+	public void flush() {
+		for (Subscription s : subscriptions)
+			s.emit();
+	}
+
+	// The subscribers complete after their queued batches
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		flush();
+		closed = true;
+		for (Subscription s : subscriptions)
+			s.complete();
+		subscriptions.clear();
+		if (ownExecutor != null)
+			ownExecutor.shutdown();
+	}
+
+	private final class Subscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super TrajectorySamples> subscriber;
+		private final Queue<TrajectorySamples> queue = new ConcurrentLinkedQueue<TrajectorySamples>();
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled, completed, subscribed;
+		private volatile Throwable error;
+
+		// Batch being built by the producer
+		private final double[] tau, r, phi, eventR, eventPhi;
+		private final byte[] flags;
+		private int size, decimation = 1;
+		private long count, sequence;
+
+		Subscription(Flow.Subscriber<? super TrajectorySamples> subscriber, int batchSize) {
+			this.subscriber = subscriber;
+			tau = new double[batchSize];
+			r = new double[batchSize];
+			phi = new double[batchSize];
+			eventR = new double[batchSize];
+			eventPhi = new double[batchSize];
+			flags = new byte[batchSize];
+		}
+
+		void add(double t, double rs, double p, double er, double ep, byte f, boolean keep) {
+			if (cancelled || (count++ % decimation != 0 && !keep))
+				return;
+			tau[size] = t;
+			r[size] = rs;
+			phi[size] = p;
+			eventR[size] = er;
+			eventPhi[size] = ep;
+			flags[size] = f;
+			if (++size == tau.length)
+				emit();
+		}
+
+		void emit() {
+			if (size == 0 || cancelled)
+				return;
+			// A batch of only turning points and placements cannot be thinned, so it
+			// goes past the buffer
+			if (queued.get() >= bufferSize && size == tau.length && thin())
+				return;
+			queue.add(new TrajectorySamples(sequence++, size, decimation, Arrays.copyOf(tau, size),
+					Arrays.copyOf(r, size), Arrays.copyOf(phi, size), Arrays.copyOf(eventR, size),
+					Arrays.copyOf(eventPhi, size), Arrays.copyOf(flags, size)));
+			size = 0;
+			if (queued.incrementAndGet() <= bufferSize / 2 && decimation > 1)
+				decimation /= 2;
+			signal();
+		}
+
+		// Keep every other sample and all flagged ones, then sample more sparsely.
+		// Returns false if all were flagged.
+		private boolean thin() {
+			int n = 0;
+			for (int i = 0; i < size; i++)
+				if (i % 2 == 0 || flags[i] != 0) {
+					tau[n] = tau[i];
+					r[n] = r[i];
+					phi[n] = phi[i];
+					eventR[n] = eventR[i];
+					eventPhi[n] = eventPhi[i];
+					flags[n] = flags[i];
+					n++;
+				}
+			size = n;
+			decimation = Math.min(DECIMATION_MAX, 2 * decimation);
+			return size < tau.length;
+		}
+
+		void complete() {
+			completed = true;
+			signal();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Non-positive request: " + n);
+			} else {
+				long d, nd;
+				do {
+					d = demand.get();
+					nd = d + n < 0 ? Long.MAX_VALUE : d + n;
+				} while (!demand.compareAndSet(d, nd));
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			queue.clear();
+		}
+
+		void signal() {
+			if (wip.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		// Drain loop, one thread at a time
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!subscribed) {
+					subscribed = true;
+					subscriber.onSubscribe(this);
+				}
+				if (error != null && !cancelled) {
+					cancel();
+					subscriber.onError(error);
+				}
+				while (!cancelled && demand.get() > 0) {
+					TrajectorySamples item = queue.poll();
+					if (item == null)
+						break;
+					queued.decrementAndGet();
+					demand.decrementAndGet();
+					subscriber.onNext(item);
+				}
+				if (completed && !cancelled && queue.isEmpty()) {
+					cancelled = true;
+					subscriber.onComplete();
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package orbits.physics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads a recording of TrajectoryWriter through memory mapping, sample by
+// sample, with seeking by the keyframe index. The file is mapped in windows,
+// so recordings larger than 2 GB work. Without the index (e.g. after a crash)
+// it is rebuilt by a scan, which ends at a truncated last record or at the
+// first record that cannot be one of a trajectory.
+public final class TrajectoryReader implements Closeable {
+
+	private static final long WINDOW = 1L << 26;
+	private static final int RECORD_MAX = 1 + 48 + 24;
+
+	private final FileChannel channel;
+	private final double tauQuantum, quantum;
+	private long dataEnd;
+	private long[] index = new long[256];
+	private int keyframes;
+	private long samples;
+
+	private MappedByteBuffer window;
+	private long windowStart, windowEnd;
+
+	// Next record and its sample number
+	private long offset, next;
+
+	// Current sample
+	private long tauQ, rQ, phiQ;
+	private double L, M, eTot, eventTau, eventR, eventPhi;
+	private int flags;
+
+	public TrajectoryReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < TrajectoryWriter.HEADER_BYTES)
+				throw new IOException("Not a trajectory recording: " + file);
+			MappedByteBuffer header = map(0, TrajectoryWriter.HEADER_BYTES);
+			if (header.getInt(0) != TrajectoryWriter.MAGIC || header.getInt(4) != TrajectoryWriter.VERSION)
+				throw new IOException("Not a trajectory recording: " + file);
+			tauQuantum = header.getDouble(16);
+			quantum = header.getDouble(24);
+
+			// The index from the footer, or from a scan
+			boolean indexed = false;
+			if (size >= TrajectoryWriter.HEADER_BYTES + 16) {
+				MappedByteBuffer footer = map(size - 16, 16);
+				long indexOffset = footer.getLong(0);
+				int n = footer.getInt(8);
+				if (footer.getInt(12) == TrajectoryWriter.INDEX_MAGIC && n >= 0
+						&& indexOffset + 16L * n + 16 == size) {
+					index = new long[Math.max(2, 2 * n)];
+					if (n > 0)
+						map(indexOffset, 16L * n).asLongBuffer().get(index, 0, 2 * n);
+					keyframes = n;
+					dataEnd = indexOffset;
+					indexed = true;
+				}
+			}
+			if (!indexed) {
+				dataEnd = size;
+				offset = TrajectoryWriter.HEADER_BYTES;
+				while (true) {
+					long start = offset;
+					if (!read())
+						break;
+					if (!isPlausible()) {
+						offset = start;
+						break;
+					}
+					if ((flags & TrajectoryWriter.KEYFRAME) != 0)
+						addKeyframe(next, start);
+					next++;
+				}
+				dataEnd = offset;
+				samples = next;
+			} else if (keyframes > 0) {
+				// Count the samples of the last block
+				offset = index[2 * keyframes - 1];
+				next = index[2 * keyframes - 2];
+				while (read())
+					next++;
+				samples = next;
+			}
+			seek(0);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void addKeyframe(long sample, long at) {
+		if (2 * keyframes + 2 > index.length)
+			index = Arrays.copyOf(index, 2 * index.length);
+		index[2 * keyframes] = sample;
+		index[2 * keyframes + 1] = at;
+		keyframes++;
+	}
+
+	private MappedByteBuffer map(long at, long length) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, at, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	public long getSamples() {
+		return samples;
+	}
+
+	// Number of the sample that next() reads
+	public long getPosition() {
+		return next;
+	}
+
+	// Position before the given sample: decode from the keyframe before it
+	public void seek(long sample) {
+		sample = Math.max(0, Math.min(samples, sample));
+		int lo = 0, hi = keyframes - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (index[2 * mid] <= sample)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		if (keyframes == 0) {
+			offset = TrajectoryWriter.HEADER_BYTES;
+			next = 0;
+			return;
+		}
+		offset = index[2 * lo + 1];
+		next = index[2 * lo];
+		while (next < sample && read())
+			next++;
+	}
+
+	// Read the next sample. Returns false at the end.
+	public boolean next() {
+		if (!read())
+			return false;
+		next++;
+		return true;
+	}
+
+	private boolean read() {
+		if (offset >= dataEnd)
+			return false;
+		try {
+			if (window == null || offset < windowStart || offset + RECORD_MAX > windowEnd && windowEnd < dataEnd) {
+				windowStart = offset;
+				windowEnd = Math.min(dataEnd, offset + WINDOW);
+				window = map(windowStart, windowEnd - windowStart);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		window.position((int) (offset - windowStart));
+		try {
+			int f = window.get() & 0xFF;
+			if ((f & TrajectoryWriter.KEYFRAME) != 0) {
+				tauQ = window.getLong();
+				rQ = window.getLong();
+				phiQ = window.getLong();
+				L = window.getDouble();
+				M = window.getDouble();
+				eTot = window.getDouble();
+			} else {
+				tauQ += getVarLong();
+				rQ += getVarLong();
+				phiQ += getVarLong();
+			}
+			if ((f & TrajectoryWriter.EVENT_MASK) != 0) {
+				eventTau = window.getDouble();
+				eventR = window.getDouble();
+				eventPhi = window.getDouble();
+			}
+			flags = f;
+		} catch (BufferUnderflowException e) {
+			// Truncated recording
+			return false;
+		}
+		offset = windowStart + window.position();
+		return true;
+	}
+
+	// Checks of a scanned record: known flags only, a keyframe with finite and
+	// positive parameters, and finite turning points
+	private boolean isPlausible() {
+		if ((flags & ~(TrajectoryWriter.EVENT_MASK | TrajectoryWriter.KEYFRAME | TrajectoryWriter.PLACEMENT)) != 0
+				|| (flags & TrajectoryWriter.EVENT_MASK) == TrajectoryWriter.EVENT_MASK)
+			return false;
+		if ((flags & TrajectoryWriter.PLACEMENT) != 0 && (flags & TrajectoryWriter.KEYFRAME) == 0)
+			return false;
+		if ((flags & TrajectoryWriter.KEYFRAME) != 0 && !(Double.isFinite(L) && Double.isFinite(M)
+				&& Double.isFinite(eTot) && L > 0 && M > 0))
+			return false;
+		return (flags & TrajectoryWriter.EVENT_MASK) == 0
+				|| Double.isFinite(eventTau) && Double.isFinite(eventR) && Double.isFinite(eventPhi);
+	}
+
+	private long getVarLong() {
+		long v = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = window.get();
+			v |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				break;
+		}
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	// The current sample
+	public double getTau() {
+		return tauQ * tauQuantum;
+	}
+
+	public double getR() {
+		return rQ * quantum;
+	}
+
+	// Unwrapped
+	public double getPhi() {
+		return phiQ * quantum;
+	}
+
+	public double getL() {
+		return L;
+	}
+
+	public double getM() {
+		return M;
+	}
+
+	public double getETot() {
+		return eTot;
+	}
+
+	// The particle was put at this sample
+	public boolean isPlacement() {
+		return (flags & TrajectoryWriter.PLACEMENT) != 0;
+	}
+
+	public OrbitEngine.Event getEvent() {
+		switch (flags & TrajectoryWriter.EVENT_MASK) {
+		case TrajectoryWriter.APASTRON:
+			return OrbitEngine.Event.APASTRON;
+		case TrajectoryWriter.PERIASTRON:
+			return OrbitEngine.Event.PERIASTRON;
+		default:
+			return OrbitEngine.Event.NONE;
+		}
+	}
+
+	// Location of the turning point passed at this sample
+	public double getEventTau() {
+		return eventTau;
+	}
+
+	public double getEventR() {
+		return eventR;
+	}
+
+	public double getEventPhi() {
+		return eventPhi;
+	}
+}
@@ -0,0 +1,82 @@
+package orbits.physics;
+
+// A batch of orbit samples as published by TrajectoryPublisher. The arrays
+// belong to the batch, which is immutable. Turning points and placements are
+// flagged at their sample, with the location of the turning point.
+public final class TrajectorySamples {
+
+	private static final byte APASTRON = 1, PERIASTRON = 2, PLACEMENT = 4;
+
+	private final long sequence;
+	private final int size, decimation;
+	private final double[] tau, r, phi, eventR, eventPhi;
+	private final byte[] flags;
+
+	TrajectorySamples(long sequence, int size, int decimation, double[] tau, double[] r, double[] phi,
+			double[] eventR, double[] eventPhi, byte[] flags) {
+		this.sequence = sequence;
+		this.size = size;
+		this.decimation = decimation;
+		this.tau = tau;
+		this.r = r;
+		this.phi = phi;
+		this.eventR = eventR;
+		this.eventPhi = eventPhi;
+		this.flags = flags;
+	}
+
+	static byte flags(OrbitEngine.Event event, boolean placement) {
+		int f = placement ? PLACEMENT : 0;
+		if (event == OrbitEngine.Event.APASTRON)
+			f |= APASTRON;
+		else if (event == OrbitEngine.Event.PERIASTRON)
+			f |= PERIASTRON;
+		return (byte) f;
+	}
+
+	// Number of this batch for its subscriber, from 0
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Steps per sample beyond the sampling of the publisher, more than 1 while
+	// the subscriber is behind. Turning points and placements are always kept.
+	public int getDecimation() {
+		return decimation;
+	}
+
+	public double getTau(int i) {
+		return tau[i];
+	}
+
+	public double getR(int i) {
+		return r[i];
+	}
+
+	// Unwrapped
+	public double getPhi(int i) {
+		return phi[i];
+	}
+
+	public OrbitEngine.Event getEvent(int i) {
+		return (flags[i] & APASTRON) != 0 ? OrbitEngine.Event.APASTRON
+				: (flags[i] & PERIASTRON) != 0 ? OrbitEngine.Event.PERIASTRON : OrbitEngine.Event.NONE;
+	}
+
+	public boolean isPlacement(int i) {
+		return (flags[i] & PLACEMENT) != 0;
+	}
+
+	// Location of the turning point passed at sample i
+	public double getEventR(int i) {
+		return eventR[i];
+	}
+
+	public double getEventPhi(int i) {
+		return eventPhi[i];
+	}
+}
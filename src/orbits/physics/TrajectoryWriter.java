@@ -0,0 +1,248 @@
+package orbits.physics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.oliverfritz.util.MoreUtil;
+
+// Records a trajectory (tau, r, phi and the turning points) into a compact
+// binary file. The caller only copies a few numbers per step into a chunk. A
+// background thread encodes the full chunks and writes them. All values are
+// little-endian:
+//   header: int MAGIC, int VERSION, int KEYFRAME_INTERVAL, int 0,
+//     double TAU_QUANTUM, double QUANTUM
+//   records: byte flags, then a keyframe or a delta, then for turning points
+//     double event tau, r, phi
+//     keyframe: long tau, r, phi (quantized), double L, M, total energy
+//     delta: zig-zag varints of the differences of the quantized tau, r, phi
+//   footer: the keyframe index (long sample, long offset per keyframe), then
+//     long index offset, int keyframes, int INDEX_MAGIC
+// A keyframe starts every KEYFRAME_INTERVAL samples and at every placement of
+// the particle, so that a reader can seek anywhere. phi is unwrapped.
+public final class TrajectoryWriter implements Closeable {
+	private static final Logger LOGGER = MoreUtil.getLogger(TrajectoryWriter.class);
+
+	public static final int MAGIC = 0x524F4252; // "ORBR"
+	public static final int INDEX_MAGIC = 0x49425249; // "IRBI"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+	public static final int KEYFRAME_INTERVAL = 1024;
+
+	// Quantization of tau, and of r and phi. Powers of two, so the scaling is
+	// exact.
+	public static final double TAU_QUANTUM = 0x1p-20;
+	public static final double QUANTUM = 0x1p-30;
+
+	// Record flags
+	public static final int APASTRON = 1;
+	public static final int PERIASTRON = 2;
+	public static final int EVENT_MASK = 3;
+	public static final int KEYFRAME = 4;
+	public static final int PLACEMENT = 8;
+
+	private static final int CHUNK = 4096;
+	private static final int CHUNKS = 4;
+
+	// Samples as handed over to the writer thread
+	private static final class Chunk {
+		final double[] tau = new double[CHUNK], r = new double[CHUNK], phi = new double[CHUNK];
+		final double[] l = new double[CHUNK], m = new double[CHUNK], eTot = new double[CHUNK];
+		final double[] eventTau = new double[CHUNK], eventR = new double[CHUNK], eventPhi = new double[CHUNK];
+		final byte[] flags = new byte[CHUNK];
+		int size;
+	}
+
+	private static final Chunk END = new Chunk();
+
+	private final FileChannel channel;
+	private final BlockingQueue<Chunk> full = new LinkedBlockingQueue<Chunk>();
+	private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNKS);
+	private final Thread thread;
+	private Chunk chunk;
+	private long samples;
+	private volatile IOException failure;
+
+	// Only used by the writer thread
+	private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+	private long position = HEADER_BYTES, written;
+	private long[] index = new long[256];
+	private int keyframes;
+	private long sinceKeyframe = KEYFRAME_INTERVAL, lastTau, lastR, lastPhi;
+
+	public TrajectoryWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(KEYFRAME_INTERVAL).putInt(0);
+		header.putDouble(TAU_QUANTUM).putDouble(QUANTUM).flip();
+		while (header.hasRemaining())
+			channel.write(header);
+		for (int i = 0; i < CHUNKS; i++)
+			free.add(new Chunk());
+		chunk = free.poll();
+		thread = new Thread(this::run, "Orbits recorder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Record the engine state after a step, or after a placement of the particle.
+	// Waits only if the writer falls behind by several chunks.
+	public void record(OrbitEngine engine, OrbitEngine.Event event, boolean placement) {
+		if (chunk == null)
+			return;
+		Chunk c = chunk;
+		int i = c.size++;
+		c.tau[i] = engine.getState().getTau();
+		c.r[i] = engine.getR();
+		c.phi[i] = engine.getUnwrappedPhi();
+		c.l[i] = engine.getL();
+		c.m[i] = engine.getM();
+		c.eTot[i] = engine.getState().getETot();
+		int flags = placement ? PLACEMENT : 0;
+		if (event == OrbitEngine.Event.APASTRON)
+			flags |= APASTRON;
+		else if (event == OrbitEngine.Event.PERIASTRON)
+			flags |= PERIASTRON;
+		if (event != OrbitEngine.Event.NONE) {
+			c.eventTau[i] = engine.getEventTau();
+			c.eventR[i] = engine.getEventR();
+			c.eventPhi[i] = engine.getEventPhi();
+		}
+		c.flags[i] = (byte) flags;
+		samples++;
+		if (c.size == CHUNK)
+			handOver();
+	}
+
+	public long getSamples() {
+		return samples;
+	}
+
+	private void handOver() {
+		if (failure != null) {
+			chunk = null;
+			return;
+		}
+		try {
+			full.put(chunk);
+			chunk = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			chunk = null;
+		}
+	}
+
+	// Write the rest and the index
+	@Override
+	public void close() throws IOException {
+		if (chunk != null && chunk.size > 0)
+			handOver();
+		chunk = null;
+		try {
+			full.put(END);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			channel.close();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	private void run() {
+		try {
+			for (Chunk c; (c = full.take()) != END;) {
+				encode(c);
+				c.size = 0;
+				free.add(c);
+			}
+			// Footer. The index starts after the buffered records, not at the bytes
+			// written so far.
+			long indexOffset = position + out.position();
+			for (int k = 0; k < keyframes; k++) {
+				ensure(16);
+				out.putLong(index[2 * k]).putLong(index[2 * k + 1]);
+			}
+			ensure(16);
+			out.putLong(indexOffset).putInt(keyframes).putInt(INDEX_MAGIC);
+			flush();
+			channel.force(false);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.getMessage(), e);
+			failure = e;
+			// Keep the recording thread from waiting for free chunks
+			free.offer(new Chunk());
+			while (full.poll() != null)
+				;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void encode(Chunk c) throws IOException {
+		for (int i = 0; i < c.size; i++) {
+			long tau = Math.round(c.tau[i] / TAU_QUANTUM);
+			long r = Math.round(c.r[i] / QUANTUM);
+			long phi = Math.round(c.phi[i] / QUANTUM);
+			int flags = c.flags[i];
+			ensure(1 + 48 + 24);
+			if ((flags & PLACEMENT) != 0 || sinceKeyframe >= KEYFRAME_INTERVAL) {
+				if (2 * keyframes + 2 > index.length)
+					index = Arrays.copyOf(index, 2 * index.length);
+				index[2 * keyframes] = written;
+				index[2 * keyframes + 1] = position + out.position();
+				keyframes++;
+				sinceKeyframe = 0;
+				out.put((byte) (flags | KEYFRAME));
+				out.putLong(tau).putLong(r).putLong(phi);
+				out.putDouble(c.l[i]).putDouble(c.m[i]).putDouble(c.eTot[i]);
+			} else {
+				out.put((byte) flags);
+				putVarLong(tau - lastTau);
+				putVarLong(r - lastR);
+				putVarLong(phi - lastPhi);
+			}
+			if ((flags & EVENT_MASK) != 0)
+				out.putDouble(c.eventTau[i]).putDouble(c.eventR[i]).putDouble(c.eventPhi[i]);
+			lastTau = tau;
+			lastR = r;
+			lastPhi = phi;
+			sinceKeyframe++;
+			written++;
+		}
+	}
+
+	// Zig-zag, then 7 bits per byte
+	private void putVarLong(long v) {
+		v = (v << 1) ^ (v >> 63);
+		while ((v & ~0x7FL) != 0) {
+			out.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.put((byte) v);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (out.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining())
+			position += channel.write(out, position);
+		out.clear();
+	}
+}
@@ -0,0 +1,8 @@
+package orbits.physics;
+
+@FunctionalInterface
+public interface TurningPointListener {
+
+	// Called for each apastron and periastron. phi is not range reduced.
+	public void turningPoint(OrbitEngine.Event event, double tau, double r, double phi);
+}
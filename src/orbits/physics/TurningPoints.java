@@ -0,0 +1,128 @@
+package orbits.physics;
+
+// The turning points of the current orbit, shared by all plots of a
+// simulation: a fixed-capacity ring of primitive arrays (time, radius, angle
+// and kind per event). Old events are overwritten, so the memory and the marks
+// drawn from it are bounded. Events are addressed by their absolute index,
+// which keeps counting across clear(). The radial period, the periastron
+// advance and the eccentricity are updated with O(1) work per event.
+public final class TurningPoints implements TurningPointListener {
+
+	public static final int CAPACITY_DEF = 1024;
+
+	private final double[] tau, r, phi;
+	private final boolean[] apastron;
+	private long first, count;
+
+	// The previous apastron and periastron (NaN if none yet) and the sums for the
+	// mean radial period and periastron advance. Both kinds of turning points
+	// contribute.
+	private double apoTau, apoR, apoPhi, periTau, periR, periPhi;
+	private double periodSum, advanceSum;
+	private long periods, apastrons, periastrons;
+
+	public TurningPoints(int capacity) {
+		capacity = Math.max(2, capacity);
+		tau = new double[capacity];
+		r = new double[capacity];
+		phi = new double[capacity];
+		apastron = new boolean[capacity];
+		clear();
+	}
+
+	public int capacity() {
+		return tau.length;
+	}
+
+	// A new orbit: no events and no statistics
+	public void clear() {
+		first = count;
+		apoTau = apoR = apoPhi = periTau = periR = periPhi = Double.NaN;
+		periodSum = advanceSum = 0;
+		periods = apastrons = periastrons = 0;
+	}
+
+	@Override
+	public void turningPoint(OrbitEngine.Event event, double tau, double r, double phi) {
+		if (event == OrbitEngine.Event.NONE)
+			return;
+		boolean apo = event == OrbitEngine.Event.APASTRON;
+		// The engine passes phi unwrapped. A replay has it range reduced, so count
+		// the turns here, as phi never decreases along an orbit.
+		double lastPhi = apo ? apoPhi : periPhi;
+		if (count > first && phi < phi(count - 1))
+			phi += 2 * Math.PI * Math.ceil((phi(count - 1) - phi) / (2 * Math.PI));
+		int i = (int) (count++ % this.tau.length);
+		this.tau[i] = tau;
+		this.r[i] = r;
+		this.phi[i] = phi;
+		apastron[i] = apo;
+		// One radial period since the previous turning point of the same kind
+		double lastTau = apo ? apoTau : periTau;
+		if (!Double.isNaN(lastTau)) {
+			periodSum += tau - lastTau;
+			advanceSum += phi - lastPhi - 2 * Math.PI;
+			periods++;
+		}
+		if (apo) {
+			apoTau = tau;
+			apoR = r;
+			apoPhi = phi;
+			apastrons++;
+		} else {
+			periTau = tau;
+			periR = r;
+			periPhi = phi;
+			periastrons++;
+		}
+	}
+
+	// First index still held. The end is given by end().
+	public long first() {
+		return Math.max(first, count - tau.length);
+	}
+
+	public long end() {
+		return count;
+	}
+
+	public double tau(long i) {
+		return tau[(int) (i % tau.length)];
+	}
+
+	public double r(long i) {
+		return r[(int) (i % r.length)];
+	}
+
+	public double phi(long i) {
+		return phi[(int) (i % phi.length)];
+	}
+
+	public boolean isApastron(long i) {
+		return apastron[(int) (i % apastron.length)];
+	}
+
+	// Statistics since the last clear(), NaN before the first full period
+	public long getApastrons() {
+		return apastrons;
+	}
+
+	public long getPeriastrons() {
+		return periastrons;
+	}
+
+	// Mean proper time between turning points of the same kind
+	public double getRadialPeriod() {
+		return periods > 0 ? periodSum / periods : Double.NaN;
+	}
+
+	// Mean angle beyond a full turn per radial period, as in AnalyticOrbit
+	public double getPeriastronAdvance() {
+		return periods > 0 ? advanceSum / periods : Double.NaN;
+	}
+
+	// From the latest apastron and periastron
+	public double getEccentricity() {
+		return (apoR - periR) / (apoR + periR);
+	}
+}
@@ -3,6 +3,7 @@ package orbits.plots;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
@@ -11,65 +12,88 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Path2D;
-import java.util.LinkedHashMap;
+import java.awt.image.BufferedImage;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ch.oliverfritz.util.BufferedCanvas;
 import ch.oliverfritz.util.MoreUtil;
+import orbits.metrics.FrameMetrics.Stage;
+import orbits.physics.OrbitEngine;
+import orbits.physics.TurningPoints;
 
 public abstract class BasePlot extends BufferedCanvas {
 	private static final Logger LOGGER = MoreUtil.getLogger(BufferedCanvas.class);
 
-	// These default values produce a nice potential. The actual values can be
-	// changed from outside.
-	private static final double L_DEF = 3.57d;
-	private static final double M_DEF = 1d;
-	public static double L = L_DEF;
-	public static double M = M_DEF;
-
-	// Radial coordinate and plot parameter.
-	protected static double r, rMax;
-	protected static double speedFactor = 1d;
+	// The simulation context with the orbit engine, which holds the parameters and
+	// the particle state, and all plots viewing it
+	protected final Simulation simulation;
+	protected final OrbitEngine engine;
+	protected final Map<String, BasePlot> plots;
 
 	// Drawing elements
 	private static final Font titleFont = new Font(Font.SANS_SERIF, Font.PLAIN, 24);
-	private static final Ellipse2D particle = new Ellipse2D.Double(-5, -5, 10, 10);
-	protected final Path2D periastronPath = new Path2D.Double();
-	protected final Path2D apastronPath = new Path2D.Double();
+	// One particle per plot, as plots may draw in parallel
+	private final FramePath particle = new FramePath(new Ellipse2D.Double(-5, -5, 10, 10));
+	private final String[] titleLines;
 	protected AffineTransform t0;
 
-	// Order-preserving map of implementing plots. The plot title must be unique
-	// because it is used as the key. Each plot is added in the constructor.
-	// Careful: Static lists may not die in the right moment. There may be strange
-	// effects in certain situations (restart).
-	public static final Map<String, BasePlot> plots = new LinkedHashMap<String, BasePlot>();
+	// Turning point marks in plot coordinates, drawn from the turning points of
+	// the simulation. New events are appended. All are rebuilt for a new size, and
+	// when as many as are held have been overwritten, so the paths stay bounded.
+	// Events before marksFrom are not shown (cleared in this plot).
+	protected final FramePath periastronPath = new FramePath(64);
+	protected final FramePath apastronPath = new FramePath(64);
+	private long marksFrom, marksStart, marksEnd;
+	private int marksWidth, marksHeight;
 
-	// Reset L and M to their default values. Can be called from outside.
-	public static void resetToDefaultParameters() {
-		L = L_DEF;
-		M = M_DEF;
-	}
+	// Off-EDT rendering: the animation thread updates the plot and renders the
+	// next frame into the back buffer, then front and back are swapped. The event
+	// thread only blits the front buffer.
+	private volatile boolean offscreen;
+	private volatile boolean steadyDirty = true;
+	private BufferedImage steadyImage, frontBuffer, backBuffer;
+	private int steadyWidth, steadyHeight, backWidth, backHeight, frontWidth, frontHeight;
+
+	private final Object bufferLock = new Object();
 
-	// Constructor
-	public BasePlot() {
+	// Constructor. The plot is added to the plots of its simulation.
+	public BasePlot(Simulation simulation) {
 		super();
+		this.simulation = simulation;
+		engine = simulation.getEngine();
+		plots = simulation.plots;
 		plots.put(this.getPlotTitle(), this);
-		addMouseListener(MoreUtil.mousePressedAdapter(e -> this.mousePressed(e)));
+		titleLines = getPlotTitle().split(" ");
+		addMouseListener(MoreUtil.mousePressedAdapter(e -> {
+			synchronized (simulation) {
+				this.mousePressed(e);
+			}
+		}));
 	}
 
 	// Transforms
 	protected double toX(double r) {
-		return r * getWidth() / rMax;
+		return r * getWidth() / engine.getRMax();
 	}
 
 	protected double toR(double x) {
-		return x * rMax / getWidth();
+		return x * engine.getRMax() / getWidth();
+	}
+
+	// Radii of the pixel columns from the right edge down to just outside the
+	// horizon, for evaluating the potential curves at once
+	protected double[] columnRadii() {
+		int n = Math.max(0, getWidth() - (int) Math.floor(toX(2 * engine.getM())));
+		double[] r = new double[n];
+		for (int i = 0; i < n; i++)
+			r[i] = toR(getWidth() - i);
+		return r;
 	}
 
 	// Plot methods
-	protected static final void drawParticle(Graphics2D g, double x, double y, boolean resetTransform) {
+	protected final void drawParticle(Graphics2D g, double x, double y, boolean resetTransform) {
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		g.setColor(Color.red);
 		g.translate(x, y);
@@ -79,16 +103,46 @@ public abstract class BasePlot extends BufferedCanvas {
 			g.translate(-x, -y);
 	}
 
-	protected static final void addLineMark(Path2D path, double x, double y) {
+	protected static final void addLineMark(FramePath path, double x, double y) {
 		// Just a little line
-		if (path.getCurrentPoint() != null)
+		if (!path.isEmpty())
 			return;
-		path.append(new Line2D.Double(x, y - 1, x, y - 5), false);
+		path.line(x, y - 1, x, y - 5);
 	}
 
+	// Hide the marks so far, e.g. for a new orbit
 	protected void resetMarks() {
-		periastronPath.reset();
-		apastronPath.reset();
+		marksFrom = simulation.getTurningPoints().end();
+		marksWidth = -1;
+	}
+
+	// Called before drawDynamicPart()
+	private void updateMarks() {
+		TurningPoints points = simulation.getTurningPoints();
+		long first = Math.max(marksFrom, points.first());
+		if (getWidth() != marksWidth || getHeight() != marksHeight
+				|| first - marksStart >= Math.max(1, points.end() - first)) {
+			periastronPath.reset();
+			apastronPath.reset();
+			rebuildMarks();
+			marksStart = marksEnd = first;
+			marksWidth = getWidth();
+			marksHeight = getHeight();
+		}
+		for (long i = Math.max(marksEnd, first); i < points.end(); i++)
+			addMark(points.isApastron(i), points.r(i), points.phi(i));
+		marksEnd = points.end();
+	}
+
+	// The mark paths are empty, and all held events will be added again
+	protected void rebuildMarks() {
+	}
+
+	// Turning points passed in the last step. The marks are added by addMark().
+	protected void apastronPassed() {
+	}
+
+	protected void periastronPassed() {
 	}
 
 	// Abstract methods
@@ -96,14 +150,32 @@ public abstract class BasePlot extends BufferedCanvas {
 
 	protected abstract void mousePressed(MouseEvent e);
 
-	protected abstract void addPeriastronMark();
-
-	protected abstract void addApastronMark();
+	// Append the mark of one turning point to its path
+	protected abstract void addMark(boolean apastron, double r, double phi);
 
 	protected abstract void drawPotential(Graphics2D g);
 
+	protected abstract void updatePlot();
+
+	protected abstract void drawDynamicPart(Graphics2D g);
+
+	// The stages are timed for the metrics of the simulation
+	@Override
+	protected final void updateDynamicPart() {
+		// With a clock, the simulation advances on its own
+		if (!simulation.hasClock())
+			advance();
+	}
+
+	void advance() {
+		long t = System.nanoTime();
+		updatePlot();
+		simulation.getMetrics().stage(getPlotTitle(), Stage.UPDATE, t);
+	}
+
 	@Override
 	protected final void paintSteadyPart(Graphics2D g) {
+		long t = System.nanoTime();
 		// Quality
 		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -133,20 +205,119 @@ public abstract class BasePlot extends BufferedCanvas {
 		FontMetrics fm = g.getFontMetrics(titleFont);
 		int x = fm.charWidth('H');
 		int y = fm.getDescent();
-		for (String s : getPlotTitle().split(" ")) {
+		for (String s : titleLines) {
 			y += fm.getHeight();
 			g.drawString(s, x, y);
 		}
+		simulation.getMetrics().stage(getPlotTitle(), Stage.STEADY, t);
 	}
 
 	@Override
-	protected void paintDynamicPart(Graphics2D g) {
+	protected final void paintDynamicPart(Graphics2D g) {
+		long t = System.nanoTime();
+		updateMarks();
+		drawDynamicPart(g);
+		simulation.getMetrics().stage(getPlotTitle(), Stage.DYNAMIC, t);
+	}
+
+	// Call first in drawDynamicPart(), after drawing in device coordinates (if any)
+	protected final void transformDynamicPart(Graphics2D g) {
 		// Choose anti-aliasing in each implementation individually
 		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
 		g.transform(t0);
 	}
 
+	// Off-EDT rendering, see Simulation.nextFrame()
+	void setOffscreen(boolean offscreen) {
+		this.offscreen = offscreen;
+		steadyDirty = true;
+	}
+
+	// Sequential part: the steady part and a back buffer of the right size
+	void prepareFrame() {
+		int w = Math.max(1, getWidth());
+		int h = Math.max(1, getHeight());
+		if (steadyDirty || w != steadyWidth || h != steadyHeight) {
+			steadyDirty = false;
+			steadyImage = ImagePool.fit(steadyImage, w, h, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = steadyImage.createGraphics();
+			paintSteadyPart(g);
+			g.dispose();
+			steadyWidth = w;
+			steadyHeight = h;
+		}
+		backBuffer = ImagePool.fit(backBuffer, w, h, BufferedImage.TYPE_INT_RGB);
+		backWidth = getWidth();
+		backHeight = getHeight();
+	}
+
+	// Parallel part: the dynamic part on top of the steady part, then swap
+	void renderFrame() {
+		Graphics2D g = backBuffer.createGraphics();
+		drawVisible(g, steadyImage);
+		paintDynamicPart(g);
+		g.dispose();
+		synchronized (bufferLock) {
+			BufferedImage b = frontBuffer;
+			frontBuffer = backBuffer;
+			backBuffer = b;
+			frontWidth = backWidth;
+			frontHeight = backHeight;
+		}
+	}
+
+	// Pooled images may be larger than the plot, so draw only the visible part
+	protected final void drawVisible(Graphics2D g, BufferedImage image) {
+		int w = Math.min(getWidth(), image.getWidth());
+		int h = Math.min(getHeight(), image.getHeight());
+		g.drawImage(image, 0, 0, w, h, 0, 0, w, h, null);
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		steadyDirty = true;
+	}
+
+	// Repaint the steady part without clearing anything else of a subclass
+	protected final void invalidateSteadyPart() {
+		super.clear();
+		steadyDirty = true;
+	}
+
+	// Without off-EDT rendering, the EDT draws the frame itself and so must hold
+	// the simulation while the clock thread may be stepping the engine
+	@Override
+	public void update(Graphics g) {
+		if (offscreen)
+			paint(g);
+		else
+			synchronized (simulation) {
+				super.update(g);
+			}
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		if (!offscreen) {
+			synchronized (simulation) {
+				super.paint(g);
+			}
+			return;
+		}
+		boolean current;
+		synchronized (bufferLock) {
+			current = frontBuffer != null && frontWidth == getWidth() && frontHeight == getHeight();
+			if (frontBuffer != null)
+				g.drawImage(frontBuffer, 0, 0, null);
+		}
+		// No frame of this size yet, e.g. exposed before the animation first ran or
+		// resized while paused
+		if (!current)
+			simulation.requestFrame();
+	}
+
 	@Override
 	public void validate() {
 		super.validate();
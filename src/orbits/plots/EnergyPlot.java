@@ -9,15 +9,23 @@ import java.awt.geom.Path2D;
 import java.lang.Math;
 import java.util.Random;
 
-import ch.oliverfritz.util.MoreMath;
+import orbits.physics.EffectivePotential;
+import orbits.physics.OrbitEngine;
 import orbits.resources.R;
 
 public final class EnergyPlot extends BasePlot {
 
-	private int direction;
-	private double rVmin, rVmax, eVmin, eVmax, eMin, eMax, eTot;
-	private boolean skipInit;
-	private static Random random = new Random();
+	private double eMin, eMax;
+
+	// Potential and width the plot range has been calculated for
+	private EffectivePotential sizedPotential;
+	private int sizedWidth;
+	private final Random random = new Random();
+	private final Line2D tick = new Line2D.Double();
+
+	public EnergyPlot(Simulation simulation) {
+		super(simulation);
+	}
 
 	// Plot title
 	@Override
@@ -32,141 +40,117 @@ public final class EnergyPlot extends BasePlot {
 
 	// Effective potential for a given radius
 	private double eG(double r) {
-		return Math.sqrt((1 - 2 * M / r) * (1 + MoreMath.sqr(L / r)));
+		return engine.getPotential().eG(r);
 	}
 
 	// Initial calculations after resizing and other changes
 	private void initSizes() {
-		// Find min and max of energy (if any)
-		double disc = MoreMath.sqr(L) - 12 * MoreMath.sqr(M);
-		if (disc < 0) {
-			rVmin = -1.0; // Flag
-			rVmax = MoreMath.sqr(L) / 2 / M;
-			eVmin = 0.75;
-			rMax = 1.75 * rVmax;
-		} else {
-			rVmin = L * (L + Math.sqrt(disc)) / 2 / M;
-			rVmax = L * (L - Math.sqrt(disc)) / 2 / M;
-			eVmin = eG(rVmin);
-			rMax = 1.75 * rVmin;
-		}
-		eVmax = eG(rVmax);
-		while (eG(rMax) < eVmax)
-			rMax *= 1.05;
+		// The extreme points of the potential are known by the engine. With the
+		// Euler method, creep in pixel steps at turning points.
+		EffectivePotential potential = engine.getPotential();
+		if (getWidth() > 0)
+			engine.setResolution(getWidth());
 
 		// Find good plot size
-		eMax = eG(rMax);
+		double eVmin = potential.getEVmin();
+		eMax = eG(potential.getRMax());
 		eMin = eVmin - (eMax - eVmin) / 10;
 		eMax += (eMax - eMin) / 10;
-
-		// Put particle at the start position. -1 is a flag.
-		putParticle(-1);
+		sizedPotential = potential;
+		sizedWidth = getWidth();
 	}
 
-	// Put particle to initial radius (e.g. by mouse click in window)
-	private void putParticle(int x) {
+	// Put particle to initial radius (e.g. by mouse click in window). A replay
+	// places the particle itself.
+	void putParticle(int x) {
+		if (simulation.isReplaying())
+			return;
 		// Without mouse click (x < 0), start near rVmax. With mouse click, for a
 		// falling orbit, start at least outside the black hole, and for a periodic
 		// orbit, start at least beyond the maximum effective potential.
-		r = (1.01 + 0.03 * random.nextDouble()) * (rVmin < 0 && x >= 0 ? 4 * M : rVmax);
-		r = Math.max(toR(x), r);
-		eTot = eG(r);
-		direction = r < rVmin ? 1 : -1;
-		// Initial marks only for non-periodic orbits
-		plots.values().forEach(p -> p.resetMarks());
-		if (rVmin < 0 || eTot > eVmax)
-			plots.values().forEach(p -> p.addApastronMark());
+		double r = (1.01 + 0.03 * random.nextDouble()) * engine.minStartRadius(x >= 0);
+		placeParticle(Math.max(toR(x), r));
+	}
+
+	void placeParticle(double r0) {
+		boolean nonPeriodic = engine.putParticle(r0);
+		simulation.newOrbit(nonPeriodic);
+		simulation.placed();
 	}
 
 	// Mouse handling: reposition particle
 	@Override
 	protected void mousePressed(MouseEvent e) {
-		if (e.getButton() != MouseEvent.BUTTON1)
+		if (e.getButton() != MouseEvent.BUTTON1 || simulation.isReplaying())
 			return;
 		plots.get(R.TIT_ORBIT).clear();
 		putParticle(e.getX());
-		plots.values().forEach(p -> p.repaint());
+		simulation.requestFrame();
 	}
 
 	@Override
-	protected void addPeriastronMark() {
-		// Do nothing at all
-	}
-
-	@Override
-	protected void addApastronMark() {
-		addLineMark(apastronPath, toX(r), toY(eG(r)));
+	protected void addMark(boolean apastron, double r, double phi) {
+		// Apastron only
+		if (apastron)
+			addLineMark(apastronPath, toX(r), toY(eG(r)));
 	}
 
 	@Override
 	protected void drawPotential(Graphics2D g) {
-		// Right after the call from validate() we can skip for once.
-		if (skipInit)
-			skipInit = false;
-		else
+		// Only recalculate after changes
+		if (sizedPotential != engine.getPotential() || sizedWidth != getWidth())
 			initSizes();
 
-		// Build the plot (and don't care about points outside the visible area)
-		Path2D p = new Path2D.Double(Path2D.WIND_NON_ZERO, getWidth());
-		double xmin = toX(2 * M);
-		p.moveTo(getWidth(), 0);
-		for (int x = getWidth(); x > xmin; x--)
-			p.lineTo(x, toY(eG(toR(x))));
-		p.lineTo(xmin, 0);
-		p.closePath();
+		// The curve is cached (and doesn't care about points outside the visible
+		// area)
+		Path2D curve = PotentialCurves.get(this, engine.getL(), engine.getM(), () -> {
+			Path2D p = new Path2D.Double(Path2D.WIND_NON_ZERO, getWidth());
+			double xmin = toX(2 * engine.getM());
+			double[] r = columnRadii();
+			double[] e = new double[r.length];
+			engine.getPotential().eG(r, e, r.length);
+			p.moveTo(getWidth(), 0);
+			for (int i = 0; i < r.length; i++)
+				p.lineTo(getWidth() - i, toY(e[i]));
+			p.lineTo(xmin, 0);
+			p.closePath();
+			return p;
+		});
 
 		// Draw energy curve and min and max energy markers.
 		g.setColor(Color.blue);
-		g.fill(p);
-		if (rVmin > 0) {
-			double x = toX(rVmin);
-			double y = toY(eVmin);
+		g.fill(curve);
+		EffectivePotential potential = engine.getPotential();
+		if (potential.hasMinimum()) {
+			double x = toX(potential.getRVmin());
+			double y = toY(potential.getEVmin());
 			g.setColor(Color.yellow);
-			g.draw(new Line2D.Double(x, y - 1, x, y - 5));
-			x = toX(rVmax);
-			y = toY(eVmax);
-			g.draw(new Line2D.Double(x, y - 1, x, y - 5));
+			tick.setLine(x, y - 1, x, y - 5);
+			g.draw(tick);
+			x = toX(potential.getRVmax());
+			y = toY(potential.getEVmax());
+			tick.setLine(x, y - 1, x, y - 5);
+			g.draw(tick);
 		}
 	}
 
 	@Override
-	protected void updateDynamicPart() {
-		// No more dynamics below the critical radius
-		if (r <= 2 * M)
-			return;
-
-		// Calculate velocity from kinetic energy, leave away factor M/2.
-		// Delta t is one frame.
-		double dr = Math.sqrt(MoreMath.sqr(eTot) - MoreMath.sqr(eG(r)));
-
-		// Slow down inside the black hole. Avoid zero motion.
-		speedFactor = (r < 4 * M ? 0.5 : 1);
-		r += direction * speedFactor * Math.max(1e-6 * M, dr);
-
-		// Check for extreme points (periastron, apastron)
-		if (eG(r) >= eTot) {
-			// An extreme point is reached. So, turn around and creep down below the total
-			// energy pixel by pixel (but with some caution).
-			direction *= -1;
-			do
-				r += toR(direction);
-			while (eG(r) >= eTot && rVmax < r && r <= rMax);
-
-			// Mark periastron and apastron
-			if (direction < 0)
-				plots.values().forEach(p -> p.addApastronMark());
-			else if (rVmin > 0)
-				plots.values().forEach(p -> p.addPeriastronMark());
-		}
+	protected void updatePlot() {
+		// This plot drives the engine by one step per frame (or a replay by its
+		// samples). The turning points are recorded for the marks of all plots.
+		OrbitEngine.Event event = simulation.step();
+		simulation.getMetrics().turningPoint(event, engine);
+		simulation.turningPointPassed(event);
 	}
 
 	@Override
-	protected void paintDynamicPart(Graphics2D g) {
-		super.paintDynamicPart(g);
+	protected void drawDynamicPart(Graphics2D g) {
+		transformDynamicPart(g);
 		// Draw the apastron markers and the particle
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		g.setColor(Color.yellow);
 		g.draw(apastronPath);
+		double r = simulation.getDisplayR();
 		drawParticle(g, toX(r), toY(eG(r)), false);
 	}
 
@@ -174,8 +158,14 @@ public final class EnergyPlot extends BasePlot {
 	public void validate() {
 		super.validate();
 		// Call parts of the potential plot routine once here in order to
-		// make sure it is evaluated before any other plot activity.
-		initSizes();
-		skipInit = true;
+		// make sure it is evaluated before any other plot activity. The animation
+		// thread may be stepping the engine.
+		synchronized (simulation) {
+			// Only the first time: a resize keeps the orbit
+			boolean first = sizedPotential == null;
+			initSizes();
+			if (first)
+				putParticle(-1);
+		}
 	}
 }
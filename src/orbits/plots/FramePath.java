@@ -0,0 +1,210 @@
+package orbits.plots;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+// A path that is drawn every frame without allocating. Like Path2D.Double, but
+// reset() keeps the arrays and getPathIterator() hands out the same iterator
+// each time, which Java2D otherwise allocates per draw. Only one drawing of a
+// path may be in progress at a time, which holds as each plot draws on one
+// thread.
+final class FramePath implements Shape {
+
+	private byte[] types;
+	private double[] coords;
+	private int numTypes, numCoords;
+	private final Iterator iterator = new Iterator();
+
+	FramePath(int capacity) {
+		capacity = Math.max(2, capacity);
+		types = new byte[capacity];
+		coords = new double[2 * capacity];
+	}
+
+	// A copy of a fixed shape, e.g. the particle
+	FramePath(Shape s) {
+		this(16);
+		double[] c = new double[6];
+		for (PathIterator it = s.getPathIterator(null); !it.isDone(); it.next()) {
+			int type = it.currentSegment(c);
+			add(type, c, points(type));
+		}
+	}
+
+	void reset() {
+		numTypes = numCoords = 0;
+	}
+
+	boolean isEmpty() {
+		return numTypes == 0;
+	}
+
+	// Number of segments, moves included
+	int size() {
+		return numTypes;
+	}
+
+	void moveTo(double x, double y) {
+		ensure(2);
+		types[numTypes++] = PathIterator.SEG_MOVETO;
+		coords[numCoords++] = x;
+		coords[numCoords++] = y;
+	}
+
+	void lineTo(double x, double y) {
+		ensure(2);
+		types[numTypes++] = PathIterator.SEG_LINETO;
+		coords[numCoords++] = x;
+		coords[numCoords++] = y;
+	}
+
+	// A separate line, as appended by Path2D.append(Line2D, false)
+	void line(double x1, double y1, double x2, double y2) {
+		moveTo(x1, y1);
+		lineTo(x2, y2);
+	}
+
+	private void add(int type, double[] c, int points) {
+		ensure(2 * points);
+		types[numTypes++] = (byte) type;
+		for (int i = 0; i < 2 * points; i++)
+			coords[numCoords++] = c[i];
+	}
+
+	private static int points(int type) {
+		switch (type) {
+		case PathIterator.SEG_MOVETO:
+		case PathIterator.SEG_LINETO:
+			return 1;
+		case PathIterator.SEG_QUADTO:
+			return 2;
+		case PathIterator.SEG_CUBICTO:
+			return 3;
+		default:
+			return 0;
+		}
+	}
+
+	// Room for this many moves and lines
+	void ensureCapacity(int segments) {
+		if (segments > types.length)
+			types = Arrays.copyOf(types, segments);
+		if (2 * segments > coords.length)
+			coords = Arrays.copyOf(coords, 2 * segments);
+	}
+
+	// Grow only beyond the largest size so far
+	private void ensure(int n) {
+		if (numTypes == types.length)
+			types = Arrays.copyOf(types, 2 * types.length);
+		if (numCoords + n > coords.length)
+			coords = Arrays.copyOf(coords, Math.max(2 * coords.length, numCoords + n));
+	}
+
+	@Override
+	public PathIterator getPathIterator(AffineTransform at) {
+		iterator.reset(at);
+		return iterator;
+	}
+
+	@Override
+	public PathIterator getPathIterator(AffineTransform at, double flatness) {
+		return new FlatteningPathIterator(getPathIterator(at), flatness);
+	}
+
+	private final class Iterator implements PathIterator {
+		private AffineTransform at;
+		private int type, coord;
+
+		void reset(AffineTransform at) {
+			this.at = at == null || at.isIdentity() ? null : at;
+			type = coord = 0;
+		}
+
+		@Override
+		public int getWindingRule() {
+			return WIND_NON_ZERO;
+		}
+
+		@Override
+		public boolean isDone() {
+			return type >= numTypes;
+		}
+
+		@Override
+		public void next() {
+			coord += 2 * points(types[type++]);
+		}
+
+		@Override
+		public int currentSegment(float[] c) {
+			int t = types[type];
+			int n = points(t);
+			if (at != null)
+				at.transform(coords, coord, c, 0, n);
+			else
+				for (int i = 0; i < 2 * n; i++)
+					c[i] = (float) coords[coord + i];
+			return t;
+		}
+
+		@Override
+		public int currentSegment(double[] c) {
+			int t = types[type];
+			int n = points(t);
+			if (at != null)
+				at.transform(coords, coord, c, 0, n);
+			else
+				System.arraycopy(coords, coord, c, 0, 2 * n);
+			return t;
+		}
+	}
+
+	// Geometry queries, not used for drawing
+	@Override
+	public Rectangle getBounds() {
+		return getBounds2D().getBounds();
+	}
+
+	@Override
+	public Rectangle2D getBounds2D() {
+		return new Path2D.Double(this).getBounds2D();
+	}
+
+	@Override
+	public boolean contains(double x, double y) {
+		return Path2D.contains(getPathIterator(null), x, y);
+	}
+
+	@Override
+	public boolean contains(Point2D p) {
+		return Path2D.contains(getPathIterator(null), p);
+	}
+
+	@Override
+	public boolean intersects(double x, double y, double w, double h) {
+		return Path2D.intersects(getPathIterator(null), x, y, w, h);
+	}
+
+	@Override
+	public boolean intersects(Rectangle2D r) {
+		return Path2D.intersects(getPathIterator(null), r);
+	}
+
+	@Override
+	public boolean contains(double x, double y, double w, double h) {
+		return Path2D.contains(getPathIterator(null), x, y, w, h);
+	}
+
+	@Override
+	public boolean contains(Rectangle2D r) {
+		return Path2D.contains(getPathIterator(null), r);
+	}
+}
@@ -0,0 +1,177 @@
+package orbits.plots;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import ch.oliverfritz.util.MoreUtil;
+
+// Renders a simulation without a display (java.awt.headless=true) into a
+// numbered PNG sequence: one composite per frame in the simple layout of the
+// animation, or one image per plot. The calling thread runs the simulation and
+// draws the plots, while a thread pool encodes and writes the images. A pool
+// of image buffers limits the frames in flight, so the simulation waits for
+// the encoders instead of filling the memory.
+public final class FrameRenderer {
+
+	// Gap between the plots in the composite
+	private static final int GAP = 2;
+
+	private final Simulation simulation = new Simulation();
+	private final BasePlot[] plots;
+	private final String[] names = { "energy", "schwarzschild", "orbit" };
+	private int width = 1920, height = 1080;
+	private int frames = 600;
+	private int stepsPerFrame = 1;
+	private boolean composite = true;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// First failure of an encoder
+	private volatile Exception failure;
+
+	public FrameRenderer() {
+		plots = new BasePlot[] { new EnergyPlot(simulation), new SchwarzschildPlot(simulation),
+				new OrbitPlot(simulation) };
+	}
+
+	// The simulation for parameters and method. Set them before rendering.
+	public Simulation getSimulation() {
+		return simulation;
+	}
+
+	// Size of the composite, or of each plot for separate images
+	public void setSize(int width, int height) {
+		this.width = Math.max(3 * GAP, width);
+		this.height = Math.max(3 * GAP, height);
+	}
+
+	public void setFrames(int frames) {
+		this.frames = Math.max(0, frames);
+	}
+
+	// Simulation steps per written frame, i.e., the speed-up of the animation
+	public void setStepsPerFrame(int stepsPerFrame) {
+		this.stepsPerFrame = Math.max(1, stepsPerFrame);
+	}
+
+	public void setComposite(boolean composite) {
+		this.composite = composite;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	// Render all frames into the directory. Returns the number of files written.
+	public int render(File directory) throws IOException, InterruptedException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create " + directory);
+
+		// Layout and steady parts, drawn once
+		Rectangle[] bounds = layout();
+		BufferedImage[] steady = new BufferedImage[plots.length];
+		for (int i = 0; i < plots.length; i++) {
+			plots[i].setSize(bounds[i].width, bounds[i].height);
+			plots[i].validate();
+			steady[i] = new BufferedImage(bounds[i].width, bounds[i].height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = steady[i].createGraphics();
+			plots[i].paintSteadyPart(g);
+			g.dispose();
+		}
+
+		// Buffers for the frames in flight
+		int inFlight = 2 * threads;
+		BlockingQueue<BufferedImage[]> free = new ArrayBlockingQueue<BufferedImage[]>(inFlight);
+		for (int k = 0; k < inFlight; k++) {
+			BufferedImage[] images = new BufferedImage[composite ? 1 : plots.length];
+			for (int i = 0; i < images.length; i++)
+				images[i] = composite ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+						: new BufferedImage(bounds[i].width, bounds[i].height, BufferedImage.TYPE_INT_RGB);
+			free.add(images);
+		}
+
+		failure = null;
+		ExecutorService encoders = Executors.newFixedThreadPool(threads);
+		try {
+			for (int frame = 0; frame < frames && failure == null; frame++) {
+				for (int k = 0; k < stepsPerFrame; k++)
+					for (BasePlot plot : plots)
+						plot.updateDynamicPart();
+
+				BufferedImage[] images = free.take();
+				draw(images, steady, bounds);
+				int number = frame;
+				encoders.execute(() -> {
+					try {
+						write(images, directory, number);
+					} catch (IOException | RuntimeException e) {
+						failure = e;
+					} finally {
+						free.add(images);
+					}
+				});
+			}
+		} finally {
+			encoders.shutdown();
+			encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure != null)
+			throw new IOException("Cannot write the frames", failure);
+		return frames * (composite ? 1 : plots.length);
+	}
+
+	// Composite: energy above Schwarzschild on the left, orbit on the right.
+	// Separate: each plot in full size.
+	private Rectangle[] layout() {
+		Rectangle[] bounds = new Rectangle[plots.length];
+		if (!composite) {
+			for (int i = 0; i < plots.length; i++)
+				bounds[i] = new Rectangle(0, 0, width, height);
+			return bounds;
+		}
+		int w = (width - GAP) / 2;
+		int h = (height - GAP) / 2;
+		bounds[0] = new Rectangle(0, 0, w, h);
+		bounds[1] = new Rectangle(0, h + GAP, w, height - h - GAP);
+		bounds[2] = new Rectangle(w + GAP, 0, width - w - GAP, height);
+		return bounds;
+	}
+
+	private void draw(BufferedImage[] images, BufferedImage[] steady, Rectangle[] bounds) {
+		Graphics2D gc = null;
+		if (composite) {
+			gc = images[0].createGraphics();
+			gc.setColor(Color.black);
+			gc.fillRect(0, 0, width, height);
+		}
+		for (int i = 0; i < plots.length; i++) {
+			Graphics2D g = composite
+					? (Graphics2D) gc.create(bounds[i].x, bounds[i].y, bounds[i].width, bounds[i].height)
+					: images[i].createGraphics();
+			g.drawImage(steady[i], 0, 0, null);
+			plots[i].paintDynamicPart(g);
+			g.dispose();
+		}
+		if (gc != null)
+			gc.dispose();
+	}
+
+	private void write(BufferedImage[] images, File directory, int frame) throws IOException {
+		for (int i = 0; i < images.length; i++) {
+			String name = String.format("%s-%06d%s", composite ? "frame" : names[i], frame, MoreUtil.PNG_EXT);
+			ImageIO.write(images[i], MoreUtil.PNG_TYPE, new File(directory, name));
+		}
+	}
+}
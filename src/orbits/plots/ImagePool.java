@@ -0,0 +1,78 @@
+package orbits.plots;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Shared images for frame buffers and layers. Sizes are rounded up to buckets
+// of BUCKET pixels, so while a window is dragged, most sizes fall into the
+// buckets already held and nothing is allocated. Images given back are kept
+// per bucket and type, a few each, with LRU eviction of the buckets. Only the
+// top left part of the size asked for is drawn and shown.
+final class ImagePool {
+
+	private static final int BUCKET = 128;
+	private static final int PER_BUCKET = 4;
+	private static final int CAPACITY = 16;
+
+	private ImagePool() {
+	}
+
+	private static final Map<Long, Deque<BufferedImage>> free = Collections.synchronizedMap(
+			new LinkedHashMap<Long, Deque<BufferedImage>>(CAPACITY, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, Deque<BufferedImage>> eldest) {
+					return size() > CAPACITY;
+				}
+			});
+
+	private static int bucket(int size) {
+		return (Math.max(1, size) + BUCKET - 1) / BUCKET * BUCKET;
+	}
+
+	private static long key(int width, int height, int type) {
+		return (long) type << 40 | (long) width << 20 | height;
+	}
+
+	// The image in use can stay for this size
+	static boolean fits(BufferedImage image, int width, int height) {
+		return image != null && image.getWidth() == bucket(width) && image.getHeight() == bucket(height);
+	}
+
+	// An image of at least this size, not cleared
+	static BufferedImage acquire(int width, int height, int type) {
+		int w = bucket(width), h = bucket(height);
+		Deque<BufferedImage> images = free.get(key(w, h, type));
+		if (images != null) {
+			synchronized (images) {
+				BufferedImage image = images.poll();
+				if (image != null)
+					return image;
+			}
+		}
+		return new BufferedImage(w, h, type);
+	}
+
+	// Give back an image that is no longer drawn or shown (null is ignored)
+	static void release(BufferedImage image) {
+		if (image == null)
+			return;
+		Deque<BufferedImage> images = free.computeIfAbsent(key(image.getWidth(), image.getHeight(), image.getType()),
+				k -> new ArrayDeque<BufferedImage>(PER_BUCKET));
+		synchronized (images) {
+			if (images.size() < PER_BUCKET)
+				images.push(image);
+		}
+	}
+
+	// Replace an image that does not fit this size anymore
+	static BufferedImage fit(BufferedImage image, int width, int height, int type) {
+		if (fits(image, width, height))
+			return image;
+		release(image);
+		return acquire(width, height, type);
+	}
+}
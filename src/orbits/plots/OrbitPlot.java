@@ -1,27 +1,111 @@
 package orbits.plots;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
-import ch.oliverfritz.util.MoreMath;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import orbits.physics.AnalyticOrbit;
+import orbits.physics.OrbitEngine;
+import orbits.physics.ParticleCloud;
+import orbits.physics.TurningPoints;
 import orbits.resources.R;
 
 public final class OrbitPlot extends BasePlot {
 
-	// Path objects
-	private Path2D orbitPathL = new Path2D.Double(Path2D.WIND_NON_ZERO, 5000);
-	private Path2D orbitPathP = new Path2D.Double(Path2D.WIND_NON_ZERO, 500);
+	// The trail is kept in a bounded buffer in physical coordinates. The path is
+	// only rebuilt from it for drawing.
+	private static final int TRAIL_LENGTH_DEF = 50000;
+	private final Trail trail = new Trail(TRAIL_LENGTH_DEF);
+	private final FramePath orbitPath = new FramePath(TRAIL_LENGTH_DEF);
+	// Incremental drawing: each new segment is drawn once onto a persistent layer
+	// between the steady part and the particle. The layer is only rebuilt when
+	// the size, the scale or the plot type change, or when the samples that have
+	// dropped out of the trail outnumber the visible ones. So the cost per frame
+	// does not depend on the trail length.
+	private boolean incremental = true;
+	private boolean layerDirty = true;
+	private BufferedImage trailLayer;
+	private Graphics2D layerGraphics;
+	private static final int LAYER_CHUNK = 256;
+	private final FramePath segments = new FramePath(2 * LAYER_CHUNK);
+	private long layerStart, layerEnd, layerMark;
+	private double layerScale, lastX, lastY;
+	private boolean hasLast;
+
+	private final Ellipse2D blackHole = new Ellipse2D.Double();
+
 	private static final float rP = 1.5f;
 	private static Stroke pointStroke = new BasicStroke(2 * rP, BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER);
 
-	// Plot size, particle coordinates, transform to center of screen
-	private double s0, phi, x, y;
+	// At time warp, trail samples closer than minDistance on screen are dropped
+	// and marks are kept once per degree of direction. minDistance is adapted
+	// once per tick from the path length on screen, so that a tick adds at most
+	// about SAMPLES_PER_TICK samples whatever the warp factor.
+	private static final double MIN_DISTANCE = 0.5;
+	private static final int SAMPLES_PER_TICK = 500;
+	private static final int MARK_DIRECTIONS = 360;
+	private double minDistance = MIN_DISTANCE;
+	private double lastSampleX, lastSampleY, stepX, stepY, tickPath;
+	private int tickSteps;
+	private final BitSet apastronAngles = new BitSet();
+	private final BitSet periastronAngles = new BitSet();
+
+	// With the analytic method, one radial period of the closed-form orbit is
+	// shown right from the placement on
+	private static final int PREVIEW_SAMPLES = 720;
+	private final FramePath previewPath = new FramePath(PREVIEW_SAMPLES + 1);
+	private AnalyticOrbit previewOrbit;
+	private double previewAngle, previewScale;
+
+	// Rosette: a bound orbit repeats one radial period, rotated by the periastron
+	// advance. The first complete cycle from apastron to apastron is captured from
+	// every engine step, whatever the time warp and the trail keep, and kept as a
+	// polyline (r and phi relative to its start). Any number of revolutions is
+	// then drawn from rotated copies onto a layer, which is only rebuilt for a new
+	// cycle, size or scale, so no integration is needed.
+	public static final int ROSETTE_MAX = 1000;
+	private static final int CYCLE_STEPS_MAX = 1 << 20;
+	private int rosetteRevolutions;
+	private double[] cycleR, cyclePhi;
+	private double cycleAngle, cycleAdvance;
+	private double[] stepR = new double[1024], stepPhi = new double[1024];
+	private int cycleSteps = -1;
+	private double cycleStartR, cycleStartPhi, cycleStartTurn;
+	private BufferedImage rosetteLayer;
+	private boolean rosetteDirty = true;
+	private double rosetteScale;
+
+	// Many-particle mode: a cloud of test particles moves along with the engine
+	// and is drawn as single pixels into an integer raster, colored by kind
+	// (bound, plunging, unbound). Steps are counted here and the cloud catches up
+	// once per frame, by at most CLOUD_SUBSTEPS of work, so it slows down with
+	// many particles or at high warp rather than the frame. The cloud is set from
+	// the event thread and read once per frame by the renderer.
+	private static final long CLOUD_SUBSTEPS = 1 << 20;
+	private static final int[] CLOUD_COLORS = { 0xFF00FFFF, 0xFFFF4040, 0xFFFFFFFF };
+	private volatile ParticleCloud cloud;
+	private final AtomicLong cloudSteps = new AtomicLong();
+	private BufferedImage cloudLayer;
+	private int[] cloudPixels;
+
+	// Shadow view: the black hole as seen from far away, with the lensed sky and
+	// the photon ring, instead of a flat disk
+	private boolean shadowView;
+
+	// Plot size, transform to center of screen
+	private double s0;
 	private boolean initMotion;
 
 	// Some variety in appearance
@@ -36,6 +120,16 @@ public final class OrbitPlot extends BasePlot {
 
 	private PlotType plotType = PlotType.LINE;
 
+	public OrbitPlot(Simulation simulation) {
+		super(simulation);
+		simulation.getMetrics().setTrailVertices(() -> trail.end() - trail.first());
+		// A line per turning point, for up to twice the turning points held (see
+		// BasePlot.updateMarks()), so the marks never grow while drawing
+		int marks = 4 * simulation.getTurningPoints().capacity();
+		apastronPath.ensureCapacity(marks);
+		periastronPath.ensureCapacity(marks);
+	}
+
 	// Plot title
 	@Override
 	protected String getPlotTitle() {
@@ -43,12 +137,87 @@ public final class OrbitPlot extends BasePlot {
 	}
 
 	// Coordinate transform radial -> Cartesian
+	private double x(double r, double phi) {
+		return r * Math.cos(phi) * s0 / engine.getRMax();
+	}
+
+	private double y(double r, double phi) {
+		return r * Math.sin(phi) * s0 / engine.getRMax();
+	}
+
+	// Particle position, interpolated with the clock of the simulation
 	private double x() {
-		return r * Math.cos(phi) * s0 / rMax;
+		return x(simulation.getDisplayR(), simulation.getDisplayPhi());
 	}
 
 	private double y() {
-		return r * Math.sin(phi) * s0 / rMax;
+		return y(simulation.getDisplayR(), simulation.getDisplayPhi());
+	}
+
+	// Trail length in samples (frames) and duration in proper time. A duration of
+	// zero means no limit.
+	public void setTrailLength(int samples) {
+		trail.setCapacity(samples);
+	}
+
+	public int getTrailLength() {
+		return trail.capacity();
+	}
+
+	public void setTrailDuration(double tau) {
+		trail.setDuration(tau);
+	}
+
+	// Number of revolutions shown as soon as one radial period is known (0 = off)
+	public void setRosetteRevolutions(int revolutions) {
+		rosetteRevolutions = Math.max(0, Math.min(ROSETTE_MAX, revolutions));
+		rosetteDirty = true;
+	}
+
+	public int getRosetteRevolutions() {
+		return rosetteRevolutions;
+	}
+
+	// Release n particles at rest between the innermost stable orbit and the
+	// edge of the plot, with angular momenta around the current one (0 = off)
+	public void releaseParticles(int n) {
+		if (n <= 0) {
+			setParticleCloud(null);
+			return;
+		}
+		double M = engine.getM();
+		double L = engine.getL();
+		ParticleCloud c = new ParticleCloud(M, 4 * engine.getRMax());
+		c.release(n, 6 * M, engine.getRMax(), 0.8 * L, 1.2 * L, System.nanoTime());
+		setParticleCloud(c);
+	}
+
+	public void setParticleCloud(ParticleCloud cloud) {
+		this.cloud = cloud;
+		cloudSteps.set(0);
+	}
+
+	public ParticleCloud getParticleCloud() {
+		return cloud;
+	}
+
+	public void setShadowView(boolean shadowView) {
+		this.shadowView = shadowView;
+		invalidateSteadyPart();
+	}
+
+	public boolean isShadowView() {
+		return shadowView;
+	}
+
+	// Switch between incremental drawing and stroking the whole trail each frame
+	public void setIncrementalTrail(boolean incremental) {
+		this.incremental = incremental;
+		layerDirty = true;
+	}
+
+	public boolean isIncrementalTrail() {
+		return incremental;
 	}
 
 	// Clear trails, hide particle
@@ -57,18 +226,20 @@ public final class OrbitPlot extends BasePlot {
 		// Checking for left and right mouse button. No default therefore.
 		switch (e.getButton()) {
 		case MouseEvent.BUTTON1:
-			if (r >= 2 * M) {
+			if (engine.getR() >= 2 * engine.getM()) {
 				// Clear, but keep the current coordinate
-				double currentPhi = phi;
+				double currentPhi = engine.getPhi();
 				clear();
-				phi = currentPhi;
+				engine.setPhi(currentPhi);
+				simulation.requestFrame();
 			}
 			break;
 
 		case MouseEvent.BUTTON3:
 			plotType = plotType.getNext();
 			initMotion = true;
-			repaint();
+			layerDirty = true;
+			simulation.requestFrame();
 			break;
 		}
 	}
@@ -77,70 +248,350 @@ public final class OrbitPlot extends BasePlot {
 	public void clear() {
 		super.clear();
 		// Reset phi and all paths
-		phi = 0;
+		engine.setPhi(0);
 		initMotion = true;
 		resetMarks();
-		orbitPathL.reset();
-		orbitPathP.reset();
+		trail.clear();
+		layerDirty = true;
+	}
+
+	@Override
+	protected void addMark(boolean apastron, double r, double phi) {
+		if (apastron) {
+			// Draw a line from the center
+			if (isNewMark(apastronAngles, phi))
+				apastronPath.line(0, 0, x(r, phi), y(r, phi));
+		} else if (r > 2 * engine.getM() && isNewMark(periastronAngles, phi)) {
+			// Located at the turning point, not at the current position
+			double l = (r - 4 * engine.getM()) * s0 / engine.getRMax() / 2;
+			double xp = x(r, phi);
+			double yp = y(r, phi);
+			double xl = xp - l * Math.cos(phi);
+			double yl = yp - l * Math.sin(phi);
+			periastronPath.line(xp, yp, xl, yl);
+		}
+	}
+
+	@Override
+	protected void rebuildMarks() {
+		apastronAngles.clear();
+		periastronAngles.clear();
 	}
 
 	@Override
-	protected void addPeriastronMark() {
-		if (r > 2 * M) {
-			double l = (r - 4 * M) * s0 / rMax / 2;
-			double xl = x() - l * Math.cos(phi);
-			double yl = y() - l * Math.sin(phi);
-			periastronPath.append(new Line2D.Double(x(), y(), xl, yl), false);
+	protected void apastronPassed() {
+		trail.setMark();
+		if (cycleR != null)
+			return;
+		// A cycle of the rosette ends and the next one starts here. The angle of a
+		// full cycle is taken from the turning points, where it is unwrapped.
+		TurningPoints points = simulation.getTurningPoints();
+		double r = engine.getEventR();
+		double phi = engine.getEventPhi();
+		double turn = points.phi(points.end() - 1);
+		if (cycleSteps >= 0)
+			cacheCycle(r, phi, turn);
+		cycleSteps = 0;
+		cycleStartR = r;
+		cycleStartPhi = phi;
+		cycleStartTurn = turn;
+	}
+
+	// Every step of the first cycle, at the end of the step
+	private void captureStep() {
+		if (cycleSteps == stepR.length) {
+			if (cycleSteps >= CYCLE_STEPS_MAX) {
+				// Too long to be worth it
+				cycleSteps = -1;
+				return;
+			}
+			stepR = Arrays.copyOf(stepR, 2 * cycleSteps);
+			stepPhi = Arrays.copyOf(stepPhi, 2 * cycleSteps);
+		}
+		stepR[cycleSteps] = engine.getR();
+		stepPhi[cycleSteps] = engine.getPhi();
+		cycleSteps++;
+	}
+
+	// Keep the cycle since the previous apastron, from and to the turning points
+	private void cacheCycle(double r, double phi, double turn) {
+		int n = cycleSteps;
+		double[] cr = new double[n + 2];
+		double[] cphi = new double[n + 2];
+		cr[0] = cycleStartR;
+		for (int i = 0; i < n; i++) {
+			cr[i + 1] = stepR[i];
+			cphi[i + 1] = stepPhi[i] - cycleStartPhi;
 		}
+		cr[n + 1] = r;
+		cphi[n + 1] = phi - cycleStartPhi;
+		cycleR = cr;
+		cyclePhi = cphi;
+		cycleAngle = cycleStartPhi;
+		cycleAdvance = turn - cycleStartTurn;
+		cycleSteps = -1;
+		rosetteDirty = true;
+	}
+
+	// At time warp, only a mark in a new direction is added
+	private boolean isNewMark(BitSet angles, double phi) {
+		if (simulation.getTimeWarp() == 1)
+			return true;
+		double turn = phi / (2 * Math.PI);
+		int i = Math.min(MARK_DIRECTIONS - 1, (int) ((turn - Math.floor(turn)) * MARK_DIRECTIONS));
+		if (angles.get(i))
+			return false;
+		angles.set(i);
+		return true;
 	}
 
 	@Override
-	protected void addApastronMark() {
-		// Draw a line from the center
-		apastronPath.append(new Line2D.Double(0, 0, x(), y()), false);
-		orbitPathP.reset();
+	protected void resetMarks() {
+		super.resetMarks();
+		// A new orbit
+		cycleR = cyclePhi = null;
+		cycleSteps = -1;
+		rosetteDirty = true;
 	}
 
 	@Override
 	protected void drawPotential(Graphics2D g) {
+		if (shadowView && getWidth() > 0 && getHeight() > 0) {
+			// The image is in device coordinates, centered
+			double x0 = 0.5 * getWidth(), y0 = 0.5 * getHeight();
+			g.drawImage(ShadowImages.get(engine.getM(), s0 / engine.getRMax(), getWidth(), getHeight()),
+					new AffineTransform(1, 0, 0, -1, -x0, y0), null);
+			return;
+		}
 		// Draw black hole
-		double r0 = 4 * M * s0 / rMax;
+		double r0 = 4 * engine.getM() * s0 / engine.getRMax();
 		g.setColor(Color.black);
-		g.fill(new Ellipse2D.Double(-r0, -r0, 2 * r0, 2 * r0));
-
-		// Also initialize x and y as r should be ready by now
-		x = x();
-		y = y();
+		blackHole.setFrame(-r0, -r0, 2 * r0, 2 * r0);
+		g.fill(blackHole);
 	}
 
 	@Override
-	protected void updateDynamicPart() {
-		// No more dynamics below the critical radius
-		if (r <= 2 * M)
+	protected void updatePlot() {
+		if (cloud != null)
+			cloudSteps.incrementAndGet();
+		// No more dynamics below the critical radius. The engine has already
+		// advanced r and phi.
+		if (engine.isCaptured())
 			return;
+		if (cycleSteps >= 0)
+			captureStep();
 
-		if (initMotion || orbitPathL.getCurrentPoint() == null) {
-			orbitPathL.moveTo(x(), y());
+		double r = engine.getR();
+		double phi = engine.getPhi();
+		double xs = x(r, phi);
+		double ys = y(r, phi);
+		int warp = simulation.getTimeWarp();
+		if (warp > 1) {
+			double dx = xs - stepX;
+			double dy = ys - stepY;
+			tickPath += Math.sqrt(dx * dx + dy * dy);
+			stepX = xs;
+			stepY = ys;
+			if (++tickSteps >= warp) {
+				minDistance = Math.max(MIN_DISTANCE, tickPath / SAMPLES_PER_TICK);
+				tickPath = 0;
+				tickSteps = 0;
+			}
+		}
+		if (initMotion) {
+			trail.addBreak();
 			initMotion = false;
-		} else {
-			// Update phi. Include basic range reduction.
-			// Slow down in the black hole.
-			phi += speedFactor * L / MoreMath.sqr(r);
-			// Alternative: phi %= 2 * Math.PI;
-			if (phi > Math.PI)
-				phi -= 2 * Math.PI;
+		} else if (warp > 1) {
+			double dx = xs - lastSampleX;
+			double dy = ys - lastSampleY;
+			if (dx * dx + dy * dy < minDistance * minDistance)
+				return;
 		}
+		trail.add(engine.getState().getTau(), r, phi);
+		lastSampleX = xs;
+		lastSampleY = ys;
+	}
 
-		// Various options of complexity (quad, Bezier...). Here is the simple one!
-		x = x();
-		y = y();
-		orbitPathL.lineTo(x, y);
-		orbitPathP.append(new Ellipse2D.Double(x - rP, y - rP, 2 * rP, 2 * rP), false);
+	// Rebuild the path from the trail in the current plot coordinates. Points are
+	// zero-length segments, which the round caps of the point stroke turn into
+	// dots.
+	private void buildPath(boolean points) {
+		orbitPath.reset();
+		boolean newSegment = true;
+		long first = points ? Math.max(trail.first(), trail.getMark()) : trail.first();
+		for (long i = first; i < trail.end(); i++) {
+			double r = trail.r(i);
+			if (Double.isNaN(r)) {
+				newSegment = true;
+				continue;
+			}
+			double phi = trail.phi(i);
+			double xi = x(r, phi);
+			double yi = y(r, phi);
+			if (newSegment || points)
+				orbitPath.moveTo(xi, yi);
+			orbitPath.lineTo(xi, yi);
+			newSegment = false;
+		}
+	}
+
+	// Bring the layer up to date: rebuild if necessary, then draw the new samples
+	private void updateLayer() {
+		boolean points = plotType == PlotType.POINTS;
+		long first = points ? Math.max(trail.first(), trail.getMark()) : trail.first();
+		double scale = s0 / engine.getRMax();
+		if (layerDirty || !ImagePool.fits(trailLayer, getWidth(), getHeight()) || scale != layerScale
+				|| (points && trail.getMark() != layerMark) || first - layerStart >= Math.max(1, trail.end() - first)) {
+			if (!ImagePool.fits(trailLayer, getWidth(), getHeight())) {
+				if (layerGraphics != null)
+					layerGraphics.dispose();
+				trailLayer = ImagePool.fit(trailLayer, getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+				layerGraphics = trailLayer.createGraphics();
+			}
+			// Clear to transparent and prepare for drawing in plot coordinates
+			layerGraphics.setTransform(new AffineTransform());
+			layerGraphics.setComposite(AlphaComposite.Clear);
+			layerGraphics.fillRect(0, 0, trailLayer.getWidth(), trailLayer.getHeight());
+			layerGraphics.setComposite(AlphaComposite.SrcOver);
+			layerGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			layerGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			layerGraphics.transform(t0);
+			layerGraphics.setColor(Color.cyan);
+			layerGraphics.setStroke(points ? pointStroke : new BasicStroke());
+			layerStart = layerEnd = first;
+			layerMark = trail.getMark();
+			layerScale = scale;
+			layerDirty = false;
+			hasLast = false;
+		}
+
+		// Only the new samples
+		for (long i = Math.max(layerEnd, first); i < trail.end(); i++) {
+			double r = trail.r(i);
+			if (Double.isNaN(r)) {
+				hasLast = false;
+				continue;
+			}
+			double phi = trail.phi(i);
+			double xi = x(r, phi);
+			double yi = y(r, phi);
+			if (points)
+				segments.line(xi, yi, xi, yi);
+			else if (hasLast)
+				segments.line(lastX, lastY, xi, yi);
+			if (segments.size() >= 2 * LAYER_CHUNK)
+				drawSegments();
+			lastX = xi;
+			lastY = yi;
+			hasLast = true;
+		}
+		drawSegments();
+		layerEnd = trail.end();
+	}
+
+	// The new segments go onto the layer in chunks, as one path each
+	private void drawSegments() {
+		if (segments.isEmpty())
+			return;
+		layerGraphics.draw(segments);
+		segments.reset();
+	}
+
+	// The path is only rebuilt for a new orbit, direction or scale
+	private void drawPreview(Graphics2D g) {
+		AnalyticOrbit orbit = engine.getMethod() == OrbitEngine.Method.ANALYTIC ? engine.getAnalyticOrbit() : null;
+		if (orbit == null)
+			return;
+		double angle = engine.getApastronAngle();
+		double scale = s0 / engine.getRMax();
+		if (orbit != previewOrbit || angle != previewAngle || scale != previewScale) {
+			previewPath.reset();
+			double period = orbit.getAngularPeriod();
+			for (int i = 0; i <= PREVIEW_SAMPLES; i++) {
+				double phi = period * i / PREVIEW_SAMPLES;
+				double r = orbit.rOfPhi(phi);
+				if (i == 0)
+					previewPath.moveTo(x(r, phi + angle), y(r, phi + angle));
+				else
+					previewPath.lineTo(x(r, phi + angle), y(r, phi + angle));
+			}
+			previewOrbit = orbit;
+			previewAngle = angle;
+			previewScale = scale;
+		}
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(Color.lightGray);
+		g.draw(previewPath);
+	}
+
+	// Draw the rotated copies of the cycle onto their layer if necessary
+	private void updateRosette() {
+		double scale = s0 / engine.getRMax();
+		if (!rosetteDirty && ImagePool.fits(rosetteLayer, getWidth(), getHeight()) && scale == rosetteScale)
+			return;
+		rosetteLayer = ImagePool.fit(rosetteLayer, getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = rosetteLayer.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, rosetteLayer.getWidth(), rosetteLayer.getHeight());
+		g.setComposite(AlphaComposite.SrcOver);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.transform(t0);
+		g.setColor(Color.cyan);
+
+		// One polyline starting at angle zero, then rotated per revolution
+		Path2D cycle = new Path2D.Double(Path2D.WIND_NON_ZERO, cycleR.length);
+		cycle.moveTo(x(cycleR[0], cyclePhi[0]), y(cycleR[0], cyclePhi[0]));
+		for (int i = 1; i < cycleR.length; i++)
+			cycle.lineTo(x(cycleR[i], cyclePhi[i]), y(cycleR[i], cyclePhi[i]));
+		AffineTransform base = g.getTransform();
+		for (int k = 0; k < rosetteRevolutions; k++) {
+			g.setTransform(base);
+			g.rotate(cycleAngle + k * cycleAdvance);
+			g.draw(cycle);
+		}
+		g.dispose();
+		rosetteScale = scale;
+		rosetteDirty = false;
+	}
+
+	// Catch up with the engine and draw the particles onto their layer. One unit
+	// of time first measures the work per unit, then the rest goes as far as the
+	// work allows.
+	private void updateCloud(ParticleCloud c) {
+		double steps = cloudSteps.getAndSet(0);
+		double first = Math.min(1, steps);
+		long work = c.advance(first);
+		if (work > 0 && work < CLOUD_SUBSTEPS)
+			c.advance(Math.min(steps - first, first * (CLOUD_SUBSTEPS - work) / work));
+		int w = Math.max(1, getWidth()), h = Math.max(1, getHeight());
+		if (!ImagePool.fits(cloudLayer, w, h)) {
+			cloudLayer = ImagePool.fit(cloudLayer, w, h, BufferedImage.TYPE_INT_ARGB);
+			cloudPixels = ((DataBufferInt) cloudLayer.getRaster().getDataBuffer()).getData();
+		}
+		Arrays.fill(cloudPixels, 0);
+		c.project(cloudPixels, cloudLayer.getWidth(), cloudLayer.getHeight(), 0.5 * getWidth(), 0.5 * getHeight(),
+				s0 / engine.getRMax(), CLOUD_COLORS);
 	}
 
 	@Override
-	protected void paintDynamicPart(Graphics2D g) {
-		super.paintDynamicPart(g);
+	protected void drawDynamicPart(Graphics2D g) {
+		ParticleCloud c = cloud;
+		if (c != null) {
+			updateCloud(c);
+			drawVisible(g, cloudLayer);
+		}
+		if (rosetteRevolutions > 0 && cycleR != null && plotType != PlotType.POINTS) {
+			updateRosette();
+			drawVisible(g, rosetteLayer);
+		}
+		// The trail layer is in device coordinates
+		if (incremental) {
+			updateLayer();
+			drawVisible(g, trailLayer);
+		}
+		transformDynamicPart(g);
+		drawPreview(g);
 		// Draw orbit, apastron, periastron, and particle.
 		if (plotType == PlotType.POINTS) {
 			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -149,16 +600,22 @@ public final class OrbitPlot extends BasePlot {
 			g.draw(apastronPath);
 			g.setColor(Color.cyan);
 			g.draw(periastronPath);
-			g.fill(orbitPathP);
+			if (!incremental) {
+				buildPath(true);
+				g.draw(orbitPath);
+			}
 		} else {
 			//g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_DEFAULT);
 			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-			g.setColor(Color.cyan);
-			g.draw(orbitPathL);
+			if (!incremental) {
+				g.setColor(Color.cyan);
+				buildPath(false);
+				g.draw(orbitPath);
+			}
 			g.setColor(Color.yellow);
 			g.draw(apastronPath);
 			if (plotType == PlotType.LINE)
-				drawParticle(g, x, y, false);
+				drawParticle(g, x(), y(), false);
 		}
 	}
 
@@ -171,5 +628,7 @@ public final class OrbitPlot extends BasePlot {
 		// Leave a bit of space at the edge
 		s0 = 0.99 * Math.min(x0, y0);
 		t0.translate(x0, y0);
+		layerDirty = true;
+		rosetteDirty = true;
 	}
 }
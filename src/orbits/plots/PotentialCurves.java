@@ -0,0 +1,64 @@
+package orbits.plots;
+
+import java.awt.geom.Path2D;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+// Shared cache of computed potential curves, keyed by plot, parameters and
+// plot size, with LRU eviction. The geometry only depends on the key, so
+// repaints and switching back to earlier parameters cost no recomputation.
+final class PotentialCurves {
+
+	private static final int CAPACITY = 32;
+
+	private PotentialCurves() {
+	}
+
+	private static final class Key {
+		private final Class<?> plot;
+		private final double L, M;
+		private final int width, height;
+
+		Key(Class<?> plot, double L, double M, int width, int height) {
+			this.plot = plot;
+			this.L = L;
+			this.M = M;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return plot == k.plot && L == k.L && M == k.M && width == k.width && height == k.height;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(plot, L, M, width, height);
+		}
+	}
+
+	private static final Map<Key, Path2D> paths = Collections.synchronizedMap(new LinkedHashMap<Key, Path2D>(
+			CAPACITY, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Path2D> eldest) {
+			return size() > CAPACITY;
+		}
+	});
+
+	static Path2D get(BasePlot plot, double L, double M, Supplier<Path2D> builder) {
+		Key key = new Key(plot.getClass(), L, M, plot.getWidth(), plot.getHeight());
+		Path2D path = paths.get(key);
+		if (path == null) {
+			path = builder.get();
+			paths.put(key, path);
+		}
+		return path;
+	}
+}
@@ -5,10 +5,16 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Path2D;
+
+import orbits.physics.PotentialKernels;
 import orbits.resources.R;
 
 public final class SchwarzschildPlot extends BasePlot {
 
+	public SchwarzschildPlot(Simulation simulation) {
+		super(simulation);
+	}
+
 	// Plot title
 	@Override
 	protected String getPlotTitle() {
@@ -17,53 +23,59 @@ public final class SchwarzschildPlot extends BasePlot {
 
 	// Parabolic Schwarzschild geometry
 	private double yS(double r) {
-		return 0.9 * getHeight() * Math.sqrt(r - 2 * M) / Math.sqrt(rMax - 2 * M);
+		return ySScale() * Math.sqrt(r - 2 * engine.getM());
 	}
 
-	@Override
-	protected void mousePressed(MouseEvent e) {
-		plots.get(R.TIT_ENERGY).mousePressed(e);
+	private double ySScale() {
+		return 0.9 * getHeight() / Math.sqrt(engine.getRMax() - 2 * engine.getM());
 	}
 
 	@Override
-	protected void addPeriastronMark() {
-		addLineMark(periastronPath, toX(r), yS(r));
+	protected void mousePressed(MouseEvent e) {
+		plots.get(R.TIT_ENERGY).mousePressed(e);
 	}
 
 	@Override
-	protected void addApastronMark() {
-		addLineMark(apastronPath, toX(r), yS(r));
+	protected void addMark(boolean apastron, double r, double phi) {
+		addLineMark(apastron ? apastronPath : periastronPath, toX(r), yS(r));
 	}
 
 	@Override
 	protected void drawPotential(Graphics2D g) {
-		// Draw potential
-		Path2D p = new Path2D.Double(Path2D.WIND_NON_ZERO, getWidth());
-		p.moveTo(getWidth(), 0);
-		double xmin = toX(2 * M);
-		for (int x = getWidth(); x > xmin; x--)
-			p.lineTo(x, yS(toR(x)));
-		p.lineTo(xmin, 0);
-		p.closePath();
+		// Draw potential, cached
+		Path2D curve = PotentialCurves.get(this, engine.getL(), engine.getM(), () -> {
+			Path2D p = new Path2D.Double(Path2D.WIND_NON_ZERO, getWidth());
+			p.moveTo(getWidth(), 0);
+			double xmin = toX(2 * engine.getM());
+			double[] r = columnRadii();
+			double[] y = new double[r.length];
+			PotentialKernels.yS(engine.getM(), ySScale(), r, y, r.length);
+			for (int i = 0; i < r.length; i++)
+				p.lineTo(getWidth() - i, y[i]);
+			p.lineTo(xmin, 0);
+			p.closePath();
+			return p;
+		});
 		g.setColor(Color.yellow);
-		g.fill(p);
+		g.fill(curve);
 	}
 
 	@Override
-	protected void updateDynamicPart() {
+	protected void updatePlot() {
 		// Nothing at all
 	}
 
 	@Override
-	protected void paintDynamicPart(Graphics2D g) {
-		super.paintDynamicPart(g);
+	protected void drawDynamicPart(Graphics2D g) {
+		transformDynamicPart(g);
 		// Draw apastron and periastron
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		g.setColor(Color.blue);
 		g.draw(periastronPath);
 		g.draw(apastronPath);
 		// Draw particle
-		if (r > 2 * M)
+		double r = simulation.getDisplayR();
+		if (!engine.isCaptured())
 			drawParticle(g, toX(r), yS(r), false);
 	}
 }
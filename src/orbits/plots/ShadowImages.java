@@ -0,0 +1,159 @@
+package orbits.plots;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import orbits.physics.PhotonDeflection;
+
+// The black hole as seen by a distant camera, in front of a checkered sky:
+// every pixel is a photon traced back from the camera, with an impact
+// parameter given by its distance from the center. It is either captured (the
+// shadow) or deflected towards the black hole, and shows the sky in the
+// direction it leaves in. Photons that were turned by more than pi went around
+// the black hole (the photon ring) and are tinted. The deflection comes from a
+// table per mass and size, and the image is rendered in tiles on the fork/join
+// pool and cached like the potential curves.
+final class ShadowImages {
+
+	private static final int CAPACITY = 8;
+	private static final int TILE = 64;
+
+	// Table entries per pixel of impact parameter
+	private static final int OVERSAMPLING = 4;
+
+	// The camera is at twice the plot radius, so the plot spans about 53 degrees
+	private static final double CAMERA_DISTANCE = 2;
+
+	// Sky: squares of 10 degrees, in two shades of blue
+	private static final double SQUARE = Math.toRadians(10);
+	private static final int SKY_DARK = 0x102040, SKY_LIGHT = 0x3060A0, RING = 0xFFA030;
+
+	private ShadowImages() {
+	}
+
+	private static final class Key {
+		private final double M, scale;
+		private final int width, height;
+
+		Key(double M, double scale, int width, int height) {
+			this.M = M;
+			this.scale = scale;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return M == k.M && scale == k.scale && width == k.width && height == k.height;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(M, scale, width, height);
+		}
+	}
+
+	private static final Map<Key, BufferedImage> images = Collections.synchronizedMap(
+			new LinkedHashMap<Key, BufferedImage>(CAPACITY, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+					return size() > CAPACITY;
+				}
+			});
+
+	// Image of the given size, centered, with scale pixels per unit of r
+	static BufferedImage get(double M, double scale, int width, int height) {
+		Key key = new Key(M, scale, width, height);
+		BufferedImage image = images.get(key);
+		if (image == null) {
+			image = render(M, scale, width, height);
+			images.put(key, image);
+		}
+		return image;
+	}
+
+	private static BufferedImage render(double M, double scale, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		// Impact parameters up to the corners
+		double bMax = 0.5 * Math.hypot(width, height) / scale;
+		int n = (int) Math.ceil(0.5 * Math.hypot(width, height) * OVERSAMPLING) + 2;
+		PhotonDeflection deflection = PhotonDeflection.of(M, bMax, n);
+		int tilesX = (width + TILE - 1) / TILE, tilesY = (height + TILE - 1) / TILE;
+		double camera = CAMERA_DISTANCE * 0.5 * Math.min(width, height) / scale;
+		ForkJoinPool.commonPool()
+				.invoke(new Tiles(0, tilesX * tilesY, tilesX, pixels, width, height, scale, camera, deflection));
+		return image;
+	}
+
+	private static final class Tiles extends RecursiveAction {
+		private final int from, to, tilesX, width, height;
+		private final int[] pixels;
+		private final double scale, camera;
+		private final PhotonDeflection deflection;
+
+		Tiles(int from, int to, int tilesX, int[] pixels, int width, int height, double scale, double camera,
+				PhotonDeflection deflection) {
+			this.from = from;
+			this.to = to;
+			this.tilesX = tilesX;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.scale = scale;
+			this.camera = camera;
+			this.deflection = deflection;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				int x0 = (from % tilesX) * TILE, y0 = (from / tilesX) * TILE;
+				renderTile(x0, y0, Math.min(width, x0 + TILE), Math.min(height, y0 + TILE));
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Tiles(from, mid, tilesX, pixels, width, height, scale, camera, deflection),
+						new Tiles(mid, to, tilesX, pixels, width, height, scale, camera, deflection));
+			}
+		}
+
+		private void renderTile(int x0, int y0, int x1, int y1) {
+			double cx = 0.5 * width, cy = 0.5 * height;
+			for (int y = y0; y < y1; y++)
+				for (int x = x0; x < x1; x++) {
+					// Screen coordinates with an upward y axis, as in the plot
+					double dx = x + 0.5 - cx, dy = cy - (y + 0.5);
+					double rho = Math.sqrt(dx * dx + dy * dy);
+					double b = rho / scale;
+					double alpha = deflection.getDeflection(b);
+					pixels[y * width + x] = Double.isNaN(alpha) ? 0
+							: sky(dx / rho, dy / rho, Math.atan2(b, camera) - alpha, alpha > Math.PI);
+				}
+		}
+	}
+
+	// The photon leaves at the angle theta from the line of sight (z), in its
+	// screen direction (cx, cy)
+	private static int sky(double cx, double cy, double theta, boolean ring) {
+		double s = Math.sin(theta);
+		double dx = s * cx, dy = s * cy, dz = Math.cos(theta);
+		double lat = Math.asin(Math.max(-1, Math.min(1, dy)));
+		double lon = Math.atan2(dx, dz);
+		boolean light = ((long) Math.floor(lat / SQUARE) + (long) Math.floor(lon / SQUARE) & 1) == 0;
+		int color = light ? SKY_LIGHT : SKY_DARK;
+		return ring ? blend(color, RING) : color;
+	}
+
+	private static int blend(int a, int b) {
+		return ((a >> 1) & 0x7F7F7F) + ((b >> 1) & 0x7F7F7F);
+	}
+}
@@ -0,0 +1,480 @@
+package orbits.plots;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.oliverfritz.util.MoreUtil;
+import orbits.metrics.FrameMetrics;
+import orbits.metrics.FrameMetrics.Stage;
+import orbits.physics.OrbitEngine;
+import orbits.physics.TrajectoryPublisher;
+import orbits.physics.TrajectoryReader;
+import orbits.physics.TrajectoryWriter;
+import orbits.physics.TurningPoints;
+import orbits.resources.R;
+
+// Simulation context: one engine and the plots viewing it. Each animation owns
+// its context, so several simulations can run side by side in one process and
+// a restart starts from scratch. Changes of the simulation state synchronize
+// on the context.
+public final class Simulation {
+	private static final Logger LOGGER = MoreUtil.getLogger(Simulation.class);
+
+	// The orbit engine holds the parameters and the particle state
+	private final OrbitEngine engine = new OrbitEngine();
+
+	// Frame and simulation metrics of this simulation
+	private final FrameMetrics metrics = new FrameMetrics();
+
+	// The turning points of the current orbit, for the marks of all plots and the
+	// orbit statistics. Live ones come from the engine, replayed ones from the
+	// recording.
+	private final TurningPoints turningPoints = new TurningPoints(TurningPoints.CAPACITY_DEF);
+
+	// Order-preserving map of the plots. The plot title must be unique because it
+	// is used as the key. Each plot adds itself in its constructor.
+	final Map<String, BasePlot> plots = new LinkedHashMap<String, BasePlot>();
+
+	// Time warp: steps per tick of the clock (or per frame without a clock)
+	public static final int TIME_WARP_MAX = 10000;
+	private volatile int timeWarp = 1;
+
+	// Fixed-timestep clock (optional). The plots draw the particle interpolated
+	// between the two latest ticks.
+	private SimulationClock clock;
+	private double prevTau, prevR, prevPhi, curTau, curR, curPhi;
+	private long tickTime;
+
+	// Recording of the live trajectory, or replay of a recording into the plots
+	// instead of the physics. The replay speed is in samples per step.
+	private TrajectoryWriter recorder;
+	private TrajectoryReader replay;
+	private double replaySpeed = 1, replayCredit;
+
+	// Publisher of the trajectory (created on demand)
+	private volatile TrajectoryPublisher publisher;
+
+	// Workers for off-EDT rendering, one per plot at most. Idle threads die.
+	// While the animation is paused, frames are rendered on request.
+	private boolean offscreen;
+	private volatile boolean running;
+	private ThreadPoolExecutor renderers;
+
+	public Simulation() {
+		engine.setTurningPointListener(turningPoints);
+	}
+
+	public OrbitEngine getEngine() {
+		return engine;
+	}
+
+	public TurningPoints getTurningPoints() {
+		return turningPoints;
+	}
+
+	public FrameMetrics getMetrics() {
+		return metrics;
+	}
+
+	// Reset L and M to their default values
+	public void resetToDefaultParameters() {
+		setParameters(OrbitEngine.L_DEF, OrbitEngine.M_DEF);
+	}
+
+	// New parameters start all plots from scratch
+	public synchronized void setParameters(double L, double M) {
+		engine.setParameters(L, M);
+		clear();
+	}
+
+	public Collection<BasePlot> getPlots() {
+		return Collections.unmodifiableCollection(plots.values());
+	}
+
+	public BasePlot getPlot(String title) {
+		return plots.get(title);
+	}
+
+	public void setTimeWarp(int timeWarp) {
+		this.timeWarp = Math.max(1, Math.min(TIME_WARP_MAX, timeWarp));
+	}
+
+	public int getTimeWarp() {
+		return timeWarp;
+	}
+
+	public synchronized void setMethod(OrbitEngine.Method method) {
+		engine.setMethod(method);
+	}
+
+	// Jump to the n-th apastron after the placement (analytic method and bound
+	// orbits only). The trail and the turning points start there, as for a new
+	// placement. Returns false if not possible.
+	public synchronized boolean jumpToOrbit(long n) {
+		if (replay != null || !engine.jumpToOrbit(n))
+			return false;
+		// Clear, but keep the current coordinate
+		double phi = engine.getPhi();
+		plots.get(R.TIT_ORBIT).clear();
+		engine.setPhi(phi);
+		newOrbit(true);
+		placed();
+		snap();
+		return true;
+	}
+
+	// The particle starts again right away, so that the clock never steps it
+	// with parameters it wasn't placed for. -1 is a flag for the start position.
+	public synchronized void clear() {
+		plots.values().forEach(p -> p.clear());
+		((EnergyPlot) plots.get(R.TIT_ENERGY)).putParticle(-1);
+		snap();
+	}
+
+	public void repaint() {
+		plots.values().forEach(p -> p.repaint());
+	}
+
+	// With off-EDT rendering, nextFrame() or requestFrame() renders before repaint()
+	public synchronized void setOffscreenRendering(boolean offscreen) {
+		this.offscreen = offscreen;
+		plots.values().forEach(p -> p.setOffscreen(offscreen));
+	}
+
+	public boolean isOffscreenRendering() {
+		return offscreen;
+	}
+
+	// Run the physics on its own clock thread at a fixed number of steps per
+	// second. The frame rate then only sets the smoothness of the animation.
+	public synchronized void startClock(double stepsPerSecond) {
+		if (clock == null)
+			clock = new SimulationClock(this, stepsPerSecond);
+		else
+			clock.setRate(stepsPerSecond);
+		snap();
+	}
+
+	public synchronized void stopClock() {
+		if (clock != null)
+			clock.stop();
+		clock = null;
+	}
+
+	// The animation runs (or pauses), and the clock with it
+	public synchronized void setRunning(boolean running) {
+		this.running = running;
+		if (clock != null) {
+			snap();
+			tickTime = System.nanoTime();
+			clock.setRunning(running);
+		}
+		if (!running && publisher != null)
+			publisher.flush();
+	}
+
+	public boolean hasClock() {
+		return clock != null;
+	}
+
+	// One physics step from the clock. A restart of the particle (tau going back)
+	// is not interpolated.
+	synchronized void tick(long time) {
+		advance();
+		prevTau = curTau;
+		prevR = curR;
+		prevPhi = curPhi;
+		curTau = engine.getState().getTau();
+		curR = engine.getR();
+		curPhi = engine.getUnwrappedPhi();
+		if (curTau < prevTau)
+			snap();
+		tickTime = time;
+	}
+
+	// Advance all plots in their order by timeWarp steps. With time warp, the
+	// whole batch is timed at once.
+	private void advance() {
+		int steps = timeWarp;
+		if (steps == 1) {
+			plots.values().forEach(p -> p.advance());
+			return;
+		}
+		long t = System.nanoTime();
+		for (int i = 0; i < steps; i++)
+			for (BasePlot p : plots.values())
+				p.updatePlot();
+		metrics.stage("Simulation", Stage.UPDATE, t);
+	}
+
+	// One step of the engine, or the next recorded samples during a replay.
+	// Called by the energy plot, which drives the engine.
+	OrbitEngine.Event step() {
+		OrbitEngine.Event event;
+		if (replay != null) {
+			event = replayStep();
+		} else {
+			event = engine.step();
+			if (recorder != null)
+				recorder.record(engine, event, false);
+		}
+		TrajectoryPublisher p = publisher;
+		if (p != null)
+			p.offer(engine, event, false);
+		return event;
+	}
+
+	// A new orbit: the turning points start over. A non-periodic orbit starts at
+	// its apastron, where the particle is, so its phi is unwrapped like the
+	// following ones.
+	void newOrbit(boolean nonPeriodic) {
+		turningPoints.clear();
+		plots.values().forEach(p -> p.resetMarks());
+		if (nonPeriodic) {
+			turningPoints.turningPoint(OrbitEngine.Event.APASTRON, engine.getEventTau(), engine.getEventR(),
+					engine.getUnwrappedPhi());
+			turningPointPassed(OrbitEngine.Event.APASTRON);
+		}
+	}
+
+	// The last turning point of a step, for what the plots do at that time. The
+	// marks themselves are drawn from the turning points.
+	void turningPointPassed(OrbitEngine.Event event) {
+		if (event == OrbitEngine.Event.APASTRON)
+			plots.values().forEach(p -> p.apastronPassed());
+		else if (event == OrbitEngine.Event.PERIASTRON)
+			plots.values().forEach(p -> p.periastronPassed());
+	}
+
+	// The energy plot has put the particle
+	void placed() {
+		if (recorder != null && replay == null)
+			recorder.record(engine, OrbitEngine.Event.NONE, true);
+		TrajectoryPublisher p = publisher;
+		if (p != null)
+			p.offer(engine, OrbitEngine.Event.NONE, true);
+	}
+
+	// Samples and turning points of this simulation as a Flow.Publisher. Partial
+	// batches are published when the clock pauses.
+	public synchronized TrajectoryPublisher getTrajectoryPublisher() {
+		if (publisher == null)
+			publisher = new TrajectoryPublisher();
+		return publisher;
+	}
+
+	// Completes all subscribers
+	public synchronized void closeTrajectoryPublisher() {
+		if (publisher != null) {
+			publisher.close();
+			publisher = null;
+		}
+	}
+
+	// Record the trajectory from now on into a file. The file is complete after
+	// stopRecording().
+	public synchronized void startRecording(Path file) throws IOException {
+		stopRecording();
+		recorder = new TrajectoryWriter(file);
+		// Start with the current state (a keyframe)
+		recorder.record(engine, OrbitEngine.Event.NONE, false);
+	}
+
+	public synchronized void stopRecording() throws IOException {
+		if (recorder != null) {
+			TrajectoryWriter r = recorder;
+			recorder = null;
+			r.close();
+		}
+	}
+
+	public boolean isRecording() {
+		return recorder != null;
+	}
+
+	// Replay a recording through the same paths as the physics: the particle
+	// position, the turning point marks and the placements
+	public synchronized void startReplay(Path file) throws IOException {
+		stopRecording();
+		stopReplay();
+		replay = new TrajectoryReader(file);
+		seekReplay(0);
+	}
+
+	// Back to the physics with a new particle
+	public synchronized void stopReplay() throws IOException {
+		if (replay != null) {
+			TrajectoryReader r = replay;
+			replay = null;
+			r.close();
+			clear();
+		}
+	}
+
+	public boolean isReplaying() {
+		return replay != null;
+	}
+
+	// Samples per step, e.g. 0.25 for slow motion. The time warp multiplies.
+	public void setReplaySpeed(double replaySpeed) {
+		this.replaySpeed = Math.max(0, replaySpeed);
+	}
+
+	public double getReplaySpeed() {
+		return replaySpeed;
+	}
+
+	public synchronized long getReplayLength() {
+		return replay == null ? 0 : replay.getSamples();
+	}
+
+	public synchronized long getReplayPosition() {
+		return replay == null ? 0 : replay.getPosition();
+	}
+
+	// Jump to any sample. The trails start there.
+	public synchronized void seekReplay(long sample) {
+		if (replay == null)
+			return;
+		replay.seek(sample);
+		replayCredit = 0;
+		if (replay.next()) {
+			plots.values().forEach(p -> p.clear());
+			turningPoints.clear();
+			turningPointPassed(applyReplay());
+		}
+		snap();
+	}
+
+	// Returns the last turning point passed. Placements happened between steps,
+	// so they do not count.
+	private OrbitEngine.Event replayStep() {
+		OrbitEngine.Event last = OrbitEngine.Event.NONE;
+		replayCredit += replaySpeed;
+		while (replayCredit >= 1) {
+			if (!replay.next()) {
+				replayCredit = 0;
+				break;
+			}
+			if (!replay.isPlacement())
+				replayCredit--;
+			OrbitEngine.Event event = applyReplay();
+			if (event != OrbitEngine.Event.NONE)
+				last = event;
+		}
+		return last;
+	}
+
+	private OrbitEngine.Event applyReplay() {
+		TrajectoryReader r = replay;
+		if (r.getL() != engine.getL() || r.getM() != engine.getM()) {
+			engine.setParameters(r.getL(), r.getM());
+			plots.values().forEach(p -> p.clear());
+		}
+		if (r.isPlacement()) {
+			// As by a mouse click into the energy plot
+			plots.get(R.TIT_ORBIT).clear();
+			engine.setPhi(r.getPhi());
+			((EnergyPlot) plots.get(R.TIT_ENERGY)).placeParticle(r.getR());
+			return OrbitEngine.Event.NONE;
+		}
+		engine.replay(r.getTau(), r.getR(), r.getPhi(), r.getETot());
+		if (r.getEvent() != OrbitEngine.Event.NONE) {
+			engine.replayTurningPoint(r.getEventTau(), r.getEventR(), r.getEventPhi());
+			turningPoints.turningPoint(r.getEvent(), r.getEventTau(), r.getEventR(), r.getEventPhi());
+		}
+		return r.getEvent();
+	}
+
+	private void snap() {
+		prevTau = curTau = engine.getState().getTau();
+		prevR = curR = engine.getR();
+		prevPhi = curPhi = engine.getUnwrappedPhi();
+	}
+
+	// Particle position for drawing: interpolated with the clock, the engine
+	// state without
+	double getDisplayR() {
+		return clock == null ? engine.getR() : prevR + alpha() * (curR - prevR);
+	}
+
+	double getDisplayPhi() {
+		return clock == null ? engine.getPhi() : prevPhi + alpha() * (curPhi - prevPhi);
+	}
+
+	private double alpha() {
+		double a = (double) (System.nanoTime() - tickTime) / clock.getPeriod();
+		return a < 0 ? 0 : a > 1 ? 1 : a;
+	}
+
+	// Update all plots in their order (the energy plot advances the engine,
+	// unless the clock does) and prepare their steady parts, then render the
+	// dynamic parts into the back buffers in parallel.
+	public synchronized void nextFrame() {
+		if (clock == null)
+			advance();
+		render();
+	}
+
+	// Show the current state without advancing, e.g. after a click or a change of
+	// the parameters. While the animation runs, its next frame does that, so
+	// the event thread does not wait for the lock then.
+	public void requestFrame() {
+		if (!running)
+			renderPaused();
+	}
+
+	private synchronized void renderPaused() {
+		if (running)
+			return;
+		// Paused, the particle is drawn where it is
+		snap();
+		if (offscreen)
+			render();
+		repaint();
+	}
+
+	private synchronized void render() {
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(plots.size());
+		for (BasePlot p : plots.values()) {
+			p.prepareFrame();
+			tasks.add(Executors.callable(p::renderFrame));
+		}
+		try {
+			for (Future<Object> f : renderers().invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.log(Level.WARNING, e.getMessage(), e.getCause());
+		}
+	}
+
+	private ThreadPoolExecutor renderers() {
+		if (renderers == null) {
+			int n = Math.max(1, Math.min(plots.size(), Runtime.getRuntime().availableProcessors()));
+			renderers = new ThreadPoolExecutor(n, n, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+				Thread t = new Thread(r, "Orbits renderer");
+				t.setDaemon(true);
+				return t;
+			});
+			renderers.allowCoreThreadTimeOut(true);
+		}
+		return renderers;
+	}
+}
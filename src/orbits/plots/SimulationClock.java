@@ -0,0 +1,63 @@
+package orbits.plots;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Clock thread with a fixed physical timestep: one tick advances the simulation
+// by one step at a fixed number of ticks per second, whatever the display
+// rate. After a stall, at most MAX_CATCH_UP ticks are made up at once and the
+// rest is dropped, so a slow machine runs slower instead of spiralling.
+final class SimulationClock implements Runnable {
+
+	private static final int MAX_CATCH_UP = 10;
+
+	private final Simulation simulation;
+	private volatile long period;
+	private volatile boolean running, stopped;
+	private final Thread thread;
+
+	SimulationClock(Simulation simulation, double ticksPerSecond) {
+		this.simulation = simulation;
+		setRate(ticksPerSecond);
+		thread = new Thread(this, "Orbits clock");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void setRate(double ticksPerSecond) {
+		period = Math.max(1, Math.round(1e9 / ticksPerSecond));
+	}
+
+	long getPeriod() {
+		return period;
+	}
+
+	void setRunning(boolean running) {
+		this.running = running;
+		LockSupport.unpark(thread);
+	}
+
+	void stop() {
+		stopped = true;
+		LockSupport.unpark(thread);
+	}
+
+	@Override
+	public void run() {
+		long next = System.nanoTime();
+		while (!stopped) {
+			if (!running) {
+				LockSupport.park(this);
+				next = System.nanoTime();
+				continue;
+			}
+			long now = System.nanoTime();
+			if (now - next > MAX_CATCH_UP * period)
+				next = now - MAX_CATCH_UP * period;
+			while (now - next >= 0 && running) {
+				simulation.tick(next);
+				next += period;
+			}
+			LockSupport.parkNanos(this, next - System.nanoTime());
+		}
+	}
+}
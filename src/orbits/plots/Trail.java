@@ -0,0 +1,107 @@
+package orbits.plots;
+
+// Fixed-capacity ring buffer of orbit samples in physical coordinates (tau, r,
+// phi). Memory and drawing cost are bounded by the capacity, and the samples
+// do not depend on the plot size. Samples are addressed by their absolute
+// index since the last clear().
+final class Trail {
+
+	private double[] tau, r, phi;
+	private long count, mark;
+	private double duration = Double.POSITIVE_INFINITY;
+
+	Trail(int capacity) {
+		tau = new double[capacity];
+		r = new double[capacity];
+		phi = new double[capacity];
+	}
+
+	int capacity() {
+		return tau.length;
+	}
+
+	// Keep the most recent samples when the capacity changes
+	void setCapacity(int capacity) {
+		capacity = Math.max(2, capacity);
+		if (capacity == tau.length)
+			return;
+		double[] newTau = new double[capacity];
+		double[] newR = new double[capacity];
+		double[] newPhi = new double[capacity];
+		for (long i = Math.max(first(), count - capacity); i < count; i++) {
+			int j = (int) (i % capacity);
+			newTau[j] = tau(i);
+			newR[j] = r(i);
+			newPhi[j] = phi(i);
+		}
+		tau = newTau;
+		r = newR;
+		phi = newPhi;
+	}
+
+	// Maximum age of the visible samples in proper time
+	void setDuration(double duration) {
+		this.duration = duration > 0 ? duration : Double.POSITIVE_INFINITY;
+	}
+
+	void clear() {
+		count = mark = 0;
+	}
+
+	void add(double tau, double r, double phi) {
+		int i = (int) (count++ % this.tau.length);
+		this.tau[i] = tau;
+		this.r[i] = r;
+		this.phi[i] = phi;
+	}
+
+	// The next sample starts a new segment. A break is stored as r = NaN.
+	void addBreak() {
+		if (count > 0 && !Double.isNaN(r(count - 1)))
+			add(tau(count - 1), Double.NaN, 0);
+	}
+
+	// The next sample is the start for point plots (set at each apastron)
+	void setMark() {
+		mark = count;
+	}
+
+	long getMark() {
+		return mark;
+	}
+
+	// First visible index, considering capacity and duration. The end is given
+	// by end().
+	long first() {
+		long lo = Math.max(0, count - tau.length);
+		if (duration == Double.POSITIVE_INFINITY || count == 0)
+			return lo;
+		// Binary search, tau is increasing
+		double tauMin = tau(count - 1) - duration;
+		long hi = count - 1;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (tau(mid) < tauMin)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	long end() {
+		return count;
+	}
+
+	double tau(long i) {
+		return tau[(int) (i % tau.length)];
+	}
+
+	double r(long i) {
+		return r[(int) (i % r.length)];
+	}
+
+	double phi(long i) {
+		return phi[(int) (i % phi.length)];
+	}
+}
@@ -28,6 +28,10 @@ public class R {
 	public static final String TXT_MASS = r.getString("TXT_MASS");
 	public static final String TXT_MAXRAD = r.getString("TXT_MAXRAD");
 	public static final String TXT_SPEED = r.getString("TXT_SPEED");
+	public static final String TXT_WARP = r.getString("TXT_WARP");
+	public static final String TXT_METHOD = r.getString("TXT_METHOD");
+	public static final String TXT_JUMP = r.getString("TXT_JUMP");
+	public static final String TXT_ROSETTE = r.getString("TXT_ROSETTE");
 	public static final String TXT_SAVEAS = r.getString("TXT_SAVEAS");
 	public static final String TXT_PNGFILES = r.getString("TXT_PNGFILES");
 	public static final String TXT_ALLFILES = r.getString("TXT_ALLFILES");